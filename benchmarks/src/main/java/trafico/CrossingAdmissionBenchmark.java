@@ -0,0 +1,66 @@
+package trafico;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Admisión al cruce: acquire/release de crossingSemaphore con más hilos que
+ * permisos, simulando un cruce breve mientras se tiene el permiso.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrossingAdmissionBenchmark {
+
+    @Param({ "1", "3", "8" })
+    int permits;
+
+    /** Trabajo (en unidades de Blackhole.consumeCPU) hecho con el permiso tomado */
+    @Param({ "0", "100" })
+    int crossingWork;
+
+    private TrafficSemaphoreSimulationV2 sim;
+
+    @Setup
+    public void setUp() {
+        sim = new TrafficSemaphoreSimulationV2();
+        sim.getConfig().setPermits(permits);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void uncontended() throws InterruptedException {
+        cross();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void contended() throws InterruptedException {
+        cross();
+    }
+
+    private void cross() throws InterruptedException {
+        sim.crossingSemaphore.acquire();
+        try {
+            Blackhole.consumeCPU(crossingWork);
+        } finally {
+            sim.crossingSemaphore.release();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package trafico;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafico.TrafficSemaphoreSimulationV2.Direction;
+import trafico.TrafficSemaphoreSimulationV2.EventLog;
+
+/**
+ * Coste del log en el hilo del vehículo: EventLog.event frente al
+ * System.out.printf síncrono original, ambos escribiendo a un flujo nulo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLogBenchmark {
+
+    /** Nombre de EventLog.Overflow (JMH no admite enums no públicos como parámetro) */
+    @Param({ "BLOCK", "DROP" })
+    String overflow;
+
+    private PrintStream sink;
+    private EventLog log;
+    private int id;
+
+    @Setup
+    public void setUp() {
+        sink = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        log = new EventLog(1 << 16, sink);
+        log.setOverflow(EventLog.Overflow.valueOf(overflow));
+        log.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        log.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void event() {
+        log.event(EventLog.Code.CRUZANDO, ++id, Direction.NorteSur);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void eventContended() {
+        log.event(EventLog.Code.CRUZANDO, 42, Direction.NorteSur);
+    }
+
+    /** Debajo del nivel configurado: solo la comprobación de nivel */
+    @Benchmark
+    @Threads(1)
+    public void eventFiltered() {
+        log.event(EventLog.Code.PIDE_PERMISO, 42, Direction.NorteSur);
+    }
+
+    /** Camino original: concatenación y printf con el cerrojo del flujo */
+    @Benchmark
+    @Threads(4)
+    public void printfContended() {
+        sink.printf("[%tT] %s%n", new Date(), ">>> V" + 42 + " está cruzando (permiso adquirido).");
+    }
+}
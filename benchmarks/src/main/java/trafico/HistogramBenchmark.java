@@ -0,0 +1,46 @@
+package trafico;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafico.TrafficSemaphoreSimulationV2.Direction;
+import trafico.TrafficSemaphoreSimulationV2.PhaseStats;
+
+/**
+ * Coste de registrar una duración de fase desde los hilos de vehículos
+ * (PhaseStats.record sobre AtomicHistogram).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistogramBenchmark {
+
+    private final PhaseStats stats = new PhaseStats();
+
+    @Benchmark
+    @Threads(1)
+    public void record() {
+        stats.record(Direction.NorteSur, PhaseStats.PERMIT_WAIT, ThreadLocalRandom.current().nextInt(1 << 30));
+    }
+
+    /** Todos los hilos sobre el mismo histograma: peor caso de contención */
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        stats.record(Direction.NorteSur, PhaseStats.PERMIT_WAIT, ThreadLocalRandom.current().nextInt(1 << 30));
+    }
+}
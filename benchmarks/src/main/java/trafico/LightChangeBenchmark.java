@@ -0,0 +1,94 @@
+package trafico;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cambio de luz: tiempo desde notifyLightChange hasta que los N vehículos que
+ * esperan en lightChanged se han despertado y han vuelto a comprobar la luz.
+ * 
+ * Los hilos en espera repiten el mismo patrón que Vehicle.run: comprueban un
+ * valor volátil bajo lightLock y hacen await mientras no cambie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightChangeBenchmark {
+
+    @Param({ "1", "16", "256" })
+    int waiters;
+
+    private TrafficSemaphoreSimulationV2 sim;
+    private Thread[] threads;
+    /** Cambios de luz publicados (equivale a currentGreen) */
+    private volatile long generation = 0;
+    private volatile boolean running = true;
+    /** Total de despertares observados por todos los hilos */
+    private final AtomicLong woken = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        sim = new TrafficSemaphoreSimulationV2();
+        threads = new Thread[waiters];
+        for (int i = 0; i < waiters; i++) {
+            threads[i] = new Thread(this::waitLoop, "Vehiculo-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    private void waitLoop() {
+        long seen = 0;
+        while (running) {
+            sim.lightLock.lock();
+            try {
+                while (running && generation == seen) {
+                    sim.lightChanged.await();
+                }
+                seen = generation;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                sim.lightLock.unlock();
+            }
+            woken.incrementAndGet();
+        }
+    }
+
+    /** @return Cambios de luz realizados */
+    @Benchmark
+    public long wakeAll() {
+        long target = woken.get() + waiters;
+        long g = ++generation;
+        sim.notifyLightChange();
+        while (woken.get() < target) {
+            Thread.yield();
+        }
+        return g;
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        sim.notifyLightChange();
+        for (Thread t : threads) {
+            t.join(1000);
+        }
+    }
+}
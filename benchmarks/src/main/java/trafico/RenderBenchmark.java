@@ -0,0 +1,112 @@
+package trafico;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafico.TrafficSemaphoreSimulationV2.Direction;
+import trafico.TrafficSemaphoreSimulationV2.FrameSnapshot;
+import trafico.TrafficSemaphoreSimulationV2.SimulationConfig;
+import trafico.TrafficSemaphoreSimulationV2.VehicleState;
+import trafico.TrafficSemaphoreSimulationV2.VehicleStore;
+
+/**
+ * Renderizado fuera de pantalla: TrafficPanel.paintComponent sobre una
+ * BufferedImage de 700x700 con N vehículos en el frame publicado. Con 0
+ * vehículos mide solo la escena (capa estática, semáforos y HUD). Con
+ * atlas=false los vehículos etiquetados se dibujan con primitivas, para
+ * comparar con el SpriteAtlas.
+ * 
+ * Se ejecuta con java.awt.headless=true, así que no necesita pantalla.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    @Param({ "0", "20", "1000", "10000", "1000000" })
+    int vehicles;
+
+    /** Copiar del SpriteAtlas (true) o dibujar con fillOval y drawChars (false) */
+    @Param({ "true", "false" })
+    String atlas;
+
+    private TrafficSemaphoreSimulationV2.TrafficPanel panel;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() {
+        SimulationConfig config = new SimulationConfig();
+        config.set("sprite-atlas", atlas);
+        TrafficSemaphoreSimulationV2 sim = new TrafficSemaphoreSimulationV2(config);
+        VehicleStore store = sim.store;
+        Random r = new Random(42);
+        for (int i = 0; i < vehicles; i++) {
+            Direction dir = TrafficSemaphoreSimulationV2.DIRECTIONS[i & 1];
+            float along = r.nextFloat() * 700;
+            int slot = dir == Direction.NorteSur
+                    ? store.allocate(i + 1, dir, 340, along, 100, null)
+                    : store.allocate(i + 1, dir, along, 340, 100, null);
+            int phases = r.nextInt(VehicleState.VALUES.length);
+            for (int p = 1; p <= phases; p++)
+                store.transition(slot, VehicleState.VALUES[p]);
+        }
+
+        FrameSnapshot frame = sim.frames.writeBuffer();
+        frame.copyFrom(store);
+        frame.currentGreen = Direction.NorteSur;
+        frame.availablePermits = 1;
+        frame.vehicleCounter = vehicles;
+        frame.activeVehicles = vehicles;
+        sim.frames.publish();
+
+        panel = sim.new TrafficPanel();
+        panel.setSize(700, 700);
+        image = new BufferedImage(700, 700, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    /** @return Imagen dibujada */
+    @Benchmark
+    public BufferedImage paint() {
+        g.setClip(null);
+        panel.paintComponent(g);
+        return image;
+    }
+
+    /**
+     * Repintado parcial como el que pide WorldTicker cuando solo se mueven
+     * los vehículos de la carretera vertical.
+     * 
+     * @return Imagen dibujada
+     */
+    @Benchmark
+    public BufferedImage paintVerticalRoad() {
+        g.setClip(291, 0, 139, 700);
+        panel.paintComponent(g);
+        return image;
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+}
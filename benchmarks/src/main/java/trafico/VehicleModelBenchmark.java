@@ -0,0 +1,69 @@
+package trafico;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Alta y baja en el modelo: addVehicleToModel seguido de
+ * removeVehicleFromModel, con N vehículos ya presentes en el VehicleStore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VehicleModelBenchmark {
+
+    @Param({ "0", "1000" })
+    int resident;
+
+    TrafficSemaphoreSimulationV2 sim;
+
+    @Setup
+    public void setUp() {
+        sim = new TrafficSemaphoreSimulationV2();
+        for (int i = 0; i < resident; i++) {
+            sim.addVehicleToModel(sim.new Vehicle(i + 1, TrafficSemaphoreSimulationV2.DIRECTIONS[i & 1]));
+        }
+    }
+
+    /** Vehículo propio de cada hilo, que entra y sale una y otra vez */
+    @State(Scope.Thread)
+    public static class Car {
+        TrafficSemaphoreSimulationV2.Vehicle vehicle;
+
+        @Setup
+        public void setUp(VehicleModelBenchmark bench) {
+            vehicle = bench.sim.new Vehicle(-1, TrafficSemaphoreSimulationV2.Direction.NorteSur);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int addRemove(Car car) {
+        sim.addVehicleToModel(car.vehicle);
+        sim.removeVehicleFromModel(car.vehicle);
+        return car.vehicle.slot;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int addRemoveContended(Car car) {
+        sim.addVehicleToModel(car.vehicle);
+        sim.removeVehicleFromModel(car.vehicle);
+        return car.vehicle.slot;
+    }
+}
@@ -0,0 +1,62 @@
+package trafico;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafico.TrafficSemaphoreSimulationV2.Direction;
+import trafico.TrafficSemaphoreSimulationV2.VehicleStore;
+
+/**
+ * Actualización de posiciones: un tick del WorldTicker (VehicleStore.advance)
+ * con N vehículos en movimiento.
+ * 
+ * Es el cálculo que antes hacía Vehicle.moveTo paso a paso en cada hilo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VehicleMoveBenchmark {
+
+    @Param({ "64", "1024", "16384" })
+    int vehicles;
+
+    private VehicleStore store;
+
+    /** Reinicia los objetivos en cada iteración para que nadie llegue antes de medir */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Random r = new Random(42);
+        store = new VehicleStore(vehicles);
+        for (int i = 0; i < vehicles; i++) {
+            Direction dir = TrafficSemaphoreSimulationV2.DIRECTIONS[i & 1];
+            int slot = store.allocate(i + 1, dir, 0, 0, (float) TrafficSemaphoreSimulationV2.sampleSpeed(r.nextDouble()),
+                    null);
+            if (dir == Direction.NorteSur)
+                store.moveTo(slot, 0, 1e7f);
+            else
+                store.moveTo(slot, 1e7f, 0);
+        }
+    }
+
+    /** @return Vehículos que llegaron a su objetivo en el tick (siempre 0) */
+    @Benchmark
+    public int advance() {
+        return store.advance(1f / 60);
+    }
+}
@@ -0,0 +1,6564 @@
+package trafico;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import javax.imageio.ImageIO;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Simulación de tráfico con semáforos utilizando conceptos de sistemas
+ * operativos.
+ * 
+ * Esta aplicación simula un cruce de calles con:
+ * - Control de semáforos automático con cambio de luces
+ * - Gestión de concurrencia mediante semáforos de Java
+ * - Máximo de 3 vehículos cruzando simultáneamente
+ * - Interfaz gráfica en tiempo real con Swing
+ * - Generación automática de vehículos con límite configurable
+ * - Terminación automática cuando todos los vehículos han pasado
+ * 
+ * Conceptos de SO implementados:
+ * - Exclusión mutua con semáforos
+ * - Sincronización de hilos
+ * - Monitores (synchronized blocks)
+ * - Variables condition (wait/notify)
+ * 
+ * @author Sistema de Simulación de Tráfico
+ * @version 2.0
+ * @since 2025
+ */
+public class TrafficSemaphoreSimulationV2 {
+
+    /**
+     * Enumeración que define las direcciones de tráfico en el cruce.
+     * NorteSur: Tráfico que va de norte a sur (vertical)
+     * EsteOeste: Tráfico que va de este a oeste (horizontal)
+     */
+    enum Direction {
+        /** Dirección vertical del tráfico */
+        NorteSur,
+        /** Dirección horizontal del tráfico */
+        EsteOeste
+    }
+
+    /** Direcciones indexadas por ordinal (evita clonar values() en cada acceso) */
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Ciclo de vida de un vehículo como máquina de estados.
+     * 
+     * Transiciones válidas (cualquier otra es un error de programación):
+     * LLEGANDO -> ESPERANDO -> CRUZANDO -> SALIDO
+     * 
+     * El ordinal se guarda como byte en VehicleStore.states y sirve de índice
+     * para las tablas de colores del renderizado.
+     */
+    enum VehicleState {
+        /** Aproximándose al cruce */
+        LLEGANDO,
+        /** Detenido esperando luz verde o permiso de cruce */
+        ESPERANDO,
+        /** Cruzando la intersección (tiene permiso) */
+        CRUZANDO,
+        /** Ha completado el cruce */
+        SALIDO;
+
+        /** Estados indexados por ordinal */
+        static final VehicleState[] VALUES = values();
+
+        /**
+         * @param next Estado destino
+         * @return true si la transición desde este estado es válida
+         */
+        boolean canTransitionTo(VehicleState next) {
+            return next.ordinal() == ordinal() + 1;
+        }
+    }
+
+    /**
+     * Observador de transiciones de estado de los vehículos (para métricas).
+     * 
+     * Se invoca de forma síncrona en el hilo que provoca la transición, con
+     * el VehicleStore protegido (guiLock en el modo con hilos), por lo que
+     * las implementaciones deben ser breves y no bloquear.
+     */
+    interface VehicleTransitionListener {
+        /**
+         * @param vehicleId Identificador del vehículo
+         * @param dir       Dirección del vehículo
+         * @param from      Estado anterior (null cuando el vehículo se crea)
+         * @param to        Nuevo estado
+         */
+        void onTransition(int vehicleId, Direction dir, VehicleState from, VehicleState to);
+    }
+
+    /**
+     * Lo que un controlador de semáforo puede observar del cruce: vehículos
+     * detenidos por dirección y tiempo desde la última llegada a la línea de
+     * parada (detector de huecos).
+     */
+    interface QueueSensors {
+        /**
+         * @param d Dirección
+         * @return Vehículos detenidos en la línea de parada (esperando luz o permiso)
+         */
+        int queued(Direction d);
+
+        /**
+         * @param d Dirección
+         * @return Milisegundos desde la última llegada, o Long.MAX_VALUE si aún no llegó nadie
+         */
+        long sinceArrivalMs(Direction d);
+
+        /**
+         * Presión de dar verde a una dirección: vehículos detenidos en ella
+         * menos los que ya hay en los tramos hacia los que salen. En un cruce
+         * aislado la salida nunca se llena y la presión es la cola.
+         * 
+         * @param d Dirección
+         * @return Presión (puede ser negativa si la salida está más cargada)
+         */
+        default int pressure(Direction d) {
+            return queued(d);
+        }
+    }
+
+    /**
+     * Política de duración del verde, común al modo con hilos y al motor de
+     * eventos discretos. El controlador pregunta al empezar el verde y cada
+     * vez que se cumple el plazo devuelto; el amarillo y el cambio de
+     * dirección no cambian.
+     */
+    interface SignalController {
+        /**
+         * @param green     Dirección con verde
+         * @param elapsedMs Milisegundos que lleva en verde
+         * @param sensors   Colas y llegadas del cruce
+         * @return Milisegundos de verde antes de volver a preguntar, o 0 para pasar a amarillo
+         */
+        long holdGreen(Direction green, long elapsedMs, QueueSensors sensors);
+
+        /**
+         * @param config Configuración (clave controller)
+         * @return Controlador de tiempo fijo, accionado o de máxima presión según la configuración
+         */
+        static SignalController create(SimulationConfig config) {
+            switch (config.getController()) {
+                case ACTUATED:
+                    return new ActuatedController(config);
+                case MAX_PRESSURE:
+                    return new MaxPressureController(config);
+                case FIXED:
+                default:
+                    return new FixedTimeController(config);
+            }
+        }
+    }
+
+    // ==================== SEMÁFOROS Y CONTROL DE CONCURRENCIA ====================
+
+    /**
+     * Semáforo contador que limita los vehículos cruzando simultáneamente
+     * (3 por defecto; redimensionable en caliente con la configuración).
+     * Implementa el concepto de exclusión mutua limitada para evitar congestión.
+     */
+    final ResizableSemaphore crossingSemaphore;
+
+    /**
+     * Semáforo binario para proteger el acceso concurrente a la GUI.
+     * Evita condiciones de carrera al actualizar la interfaz gráfica.
+     */
+    private final Semaphore guiLock = new Semaphore(1);
+
+    /**
+     * Cerrojo para coordinar cambios de semáforo (reemplaza al monitor con
+     * synchronized). A diferencia de wait/notify, ReentrantLock no fija (pin)
+     * el hilo portador cuando los vehículos se ejecutan en hilos virtuales.
+     */
+    final ReentrantLock lightLock = new ReentrantLock();
+
+    /**
+     * Variable de condición asociada a lightLock: los vehículos esperan en
+     * ella hasta que su dirección tenga luz verde.
+     */
+    final Condition lightChanged = lightLock.newCondition();
+
+    /** Ejecutor de vehículos, generador y controlador de semáforos */
+    private ExecutorService executor;
+
+    // ==================== ESTADO DEL SISTEMA ====================
+
+    /**
+     * Dirección actual que tiene luz verde (acceso volátil para visibilidad entre
+     * hilos)
+     */
+    private volatile Direction currentGreen = Direction.NorteSur;
+
+    /**
+     * Almacén por columnas de todos los vehículos en el sistema
+     * (protegido por guiLock).
+     */
+    final VehicleStore store = new VehicleStore(64);
+
+    /**
+     * Zona del panel que cambió desde el último tick: la marcan los cambios
+     * del almacén y la vacía WorldTicker (protegida por guiLock).
+     */
+    private final DirtyRegion dirty = new DirtyRegion();
+
+    /**
+     * Frames publicados por WorldTicker y leídos por el panel sin bloqueos.
+     * El EDT nunca toma guiLock: dibuja siempre el último frame completo.
+     */
+    final SnapshotBuffer frames = new SnapshotBuffer();
+
+    /** Referencia al panel gráfico para renderizado */
+    private TrafficPanel panel;
+
+    // ==================== CONFIGURACIÓN ====================
+
+    /**
+     * Tiempos, capacidad, generación y límites de la simulación.
+     * Los tiempos, los permisos y la generación se pueden cambiar en caliente.
+     */
+    private final SimulationConfig config;
+
+    /** Planificador que ejecuta el WorldTicker a frecuencia fija */
+    private ScheduledExecutorService tickScheduler;
+
+    /** Registro asíncrono de eventos (los hilos de vehículos no escriben en stdout) */
+    final EventLog eventLog;
+
+    /** Duración de cada fase de Vehicle.run por dirección */
+    final PhaseStats phaseStats = new PhaseStats();
+
+    /** Traza binaria de cambios de estado (null si no se pidió --trace) */
+    private volatile TraceWriter trace;
+
+    // ==================== CONTADORES Y FLAGS ====================
+
+    /** Contador incremental para identificar vehículos únicos (volátil para las métricas) */
+    private volatile int vehicleCounter = 0;
+
+    /** Contador thread-safe de vehículos activos en el sistema */
+    private volatile int activeVehicles = 0;
+
+    /** Bandera para coordinar el cierre ordenado de la simulación */
+    private volatile boolean shouldStop = false;
+
+    // ==================== MÉTRICAS (sin guiLock) ====================
+
+    /** true durante la fase amarilla del controlador */
+    private volatile boolean yellowPhase = false;
+
+    /** Vehículos detenidos esperando luz verde, por dirección */
+    private final AtomicIntegerArray lightQueue = new AtomicIntegerArray(DIRECTIONS.length);
+
+    /** Vehículos con luz verde esperando un permiso, por dirección */
+    private final AtomicIntegerArray permitQueue = new AtomicIntegerArray(DIRECTIONS.length);
+
+    /** Vehículos que completaron el cruce */
+    private final LongAdder crossings = new LongAdder();
+
+    /** System.nanoTime() de la última llegada a la línea de parada, por dirección */
+    private final AtomicLongArray lastArrival = new AtomicLongArray(DIRECTIONS.length);
+
+    /** Colas de la simulación con hilos tal como las ve el controlador de semáforos */
+    private final QueueSensors sensors = new QueueSensors() {
+        @Override
+        public int queued(Direction d) {
+            return lightQueue.get(d.ordinal()) + permitQueue.get(d.ordinal());
+        }
+
+        @Override
+        public long sinceArrivalMs(Direction d) {
+            long t = lastArrival.get(d.ordinal());
+            return t == Long.MIN_VALUE ? Long.MAX_VALUE : (System.nanoTime() - t) / 1_000_000L;
+        }
+    };
+
+    /** Servidor HTTP de métricas (null si no se pidió metrics-port) */
+    private MetricsServer metricsServer;
+
+    /** Decide cuánto dura cada verde (tiempo fijo o accionado por las colas) */
+    private final SignalController signalController;
+
+    /**
+     * Crea una simulación con la configuración por defecto.
+     */
+    public TrafficSemaphoreSimulationV2() {
+        this(new SimulationConfig());
+    }
+
+    /**
+     * Crea una simulación con una configuración específica.
+     * 
+     * Los cambios posteriores de permisos en la configuración redimensionan
+     * crossingSemaphore sin perder los permisos que están en uso.
+     * 
+     * @param config Configuración de la simulación
+     */
+    public TrafficSemaphoreSimulationV2(SimulationConfig config) {
+        this.config = config;
+        this.crossingSemaphore = new ResizableSemaphore(config.getPermits());
+        this.signalController = SignalController.create(config);
+        for (int d = 0; d < DIRECTIONS.length; d++)
+            lastArrival.set(d, Long.MIN_VALUE);
+        this.eventLog = new EventLog(config.getLogBuffer(), System.out);
+        eventLog.setLevel(config.getLogLevel());
+        eventLog.setOverflow(config.getLogOverflow());
+        config.addListener(c -> {
+            crossingSemaphore.resize(c.getPermits());
+            eventLog.setLevel(c.getLogLevel());
+            eventLog.setOverflow(c.getLogOverflow());
+        });
+    }
+
+    /** @return Configuración en vivo de esta simulación */
+    public SimulationConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Punto de entrada principal de la aplicación.
+     * Utiliza SwingUtilities.invokeLater para garantizar que la GUI
+     * se ejecute en el Event Dispatch Thread (EDT).
+     * 
+     * Los argumentos se describen en SimulationConfig (por ejemplo
+     * --headless, --vehicles=N, --permits=N, --green-ms=N o
+     * --config=archivo.properties). Los argumentos --sweep* ejecutan un
+     * barrido de parámetros en paralelo (ver SweepRunner), y
+     * --trace-stats=dir / --trace-dump=dir leen una traza binaria.
+     * 
+     * @param args Argumentos de línea de comandos
+     */
+    public static void main(String[] args) throws Exception {
+        SimulationConfig config;
+        SweepRunner sweep;
+        try {
+            List<String> simArgs = new ArrayList<>();
+            List<String> sweepArgs = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--trace-stats=")) {
+                    TraceReader.printStats(Paths.get(arg.substring("--trace-stats=".length())), System.out);
+                    return;
+                } else if (arg.startsWith("--trace-dump=")) {
+                    TraceReader.dump(Paths.get(arg.substring("--trace-dump=".length())), System.out);
+                    return;
+                }
+                (arg.startsWith("--sweep") ? sweepArgs : simArgs).add(arg);
+            }
+            config = SimulationConfig.fromArgs(simArgs.toArray(new String[0]));
+            sweep = new SweepRunner(config);
+            for (String arg : sweepArgs) {
+                if (!sweep.accept(arg))
+                    throw new IllegalArgumentException("Argumento desconocido: " + arg);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        if (sweep.isEnabled()) {
+            sweep.run();
+            return;
+        }
+
+        TrafficSemaphoreSimulationV2 sim = new TrafficSemaphoreSimulationV2(config);
+        if (config.getReplay() != null) {
+            sim.startReplay();
+        } else if (config.getGridRows() > 0) {
+            sim.startGrid();
+        } else if (config.isFourWay()) {
+            sim.startFourWay();
+        } else if (config.isHeadless()) {
+            sim.startHeadless();
+        } else {
+            SwingUtilities.invokeLater(sim::start);
+        }
+    }
+
+    /**
+     * Ejecuta la simulación completa con el motor de eventos discretos,
+     * sin interfaz gráfica y sin esperas de reloj real.
+     * 
+     * Utiliza los mismos tiempos y límites que el modo gráfico y al terminar
+     * imprime un resumen con el tiempo simulado y el rendimiento obtenido.
+     */
+    private void startHeadless() {
+        eventLog.start();
+        DiscreteEventSimulation des = new DiscreteEventSimulation(config);
+        TraceWriter t = openTrace(TraceWriter.CLOCK_SIMULATED);
+        des.setTrace(t);
+        FrameExporter exporter = null;
+        if (config.getExport() != null) {
+            try {
+                exporter = new FrameExporter();
+                des.setExporter(exporter);
+                log("Exportando frames a " + config.getExport() + " cada " + config.getExportStrideMs()
+                        + " ms simulados (" + config.getExportWorkers() + " hilos).");
+            } catch (IOException e) {
+                eventLog.message(EventLog.Level.WARN, "No se pudo abrir la exportación: " + e.getMessage());
+            }
+        }
+        log("Simulación headless iniciada (semilla " + config.getSeed() + ", " + config.getMaxVehicles()
+                + " vehículos).");
+        long t0 = System.nanoTime();
+        des.run();
+        long wallNanos = System.nanoTime() - t0;
+        log(des.summary(wallNanos));
+        log(des.phaseStats().report());
+        if (exporter != null) {
+            try {
+                int exported = exporter.close();
+                log(exported + " frames exportados en " + (System.nanoTime() - t0) / 1_000_000L + " ms reales.");
+            } catch (IOException e) {
+                eventLog.message(EventLog.Level.WARN, "Error al exportar frames: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeTrace();
+        eventLog.close();
+    }
+
+    /**
+     * Simula la red de cruces de --grid con eventos discretos. La red no
+     * tiene vista gráfica, así que siempre se ejecuta en modo headless.
+     */
+    private void startGrid() {
+        eventLog.start();
+        GridSimulation grid = new GridSimulation(config);
+        log("Red " + config.getGridRows() + "x" + config.getGridCols() + " iniciada (semilla " + config.getSeed()
+                + ", " + config.getMaxVehicles() + " vehículos, " + config.getSegmentCapacity()
+                + " vehículos por tramo, " + config.getWorkers() + " hilos, controlador "
+                + config.getController().name().toLowerCase().replace('_', '-') + ").");
+        long t0 = System.nanoTime();
+        try {
+            grid.run();
+            log(grid.summary(System.nanoTime() - t0));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            eventLog.message(EventLog.Level.WARN, "Simulación de la red interrumpida.");
+        }
+        eventLog.close();
+    }
+
+    /**
+     * Simula el cruce de cuatro accesos con giros y admisión por matriz de
+     * conflictos. Como la red, no tiene vista gráfica.
+     */
+    private void startFourWay() {
+        eventLog.start();
+        FourWaySimulation fourWay = new FourWaySimulation(config);
+        log("Cruce de cuatro accesos iniciado (semilla " + config.getSeed() + ", " + config.getMaxVehicles()
+                + " vehículos, " + config.getPermits() + " por movimiento).");
+        long t0 = System.nanoTime();
+        fourWay.run();
+        log(fourWay.summary(System.nanoTime() - t0));
+        log(fourWay.phaseStats().report());
+        eventLog.close();
+    }
+
+    /**
+     * Vuelve a ejecutar una traza grabada con el motor de eventos discretos,
+     * sin esperas reales.
+     * 
+     * La semilla y los permisos salen de la traza; las llegadas de vehículos,
+     * los cambios de luz y el orden de concesión de permisos se imponen desde
+     * ella. Al terminar se comparan las huellas de la traza original y de la
+     * reejecución: con una traza headless deben coincidir registro a registro
+     * y con una traza de tiempo real deben coincidir todas las decisiones.
+     */
+    private void startReplay() {
+        eventLog.start();
+        ReplayScript script;
+        try {
+            script = ReplayScript.load(config.getReplay());
+        } catch (IOException e) {
+            eventLog.message(EventLog.Level.WARN, "No se pudo leer la traza: " + e.getMessage());
+            eventLog.close();
+            return;
+        }
+        log("Reproduciendo " + config.getReplay() + ": " + script.describe());
+
+        DiscreteEventSimulation des = new DiscreteEventSimulation(config, script);
+        TraceFingerprint replayed = new TraceFingerprint(openTrace(TraceWriter.CLOCK_SIMULATED));
+        des.setTrace(replayed);
+        long t0 = System.nanoTime();
+        des.run();
+        long wallNanos = System.nanoTime() - t0;
+        log(des.summary(wallNanos).replace("headless", "reproducida"));
+        log(script.verify(replayed));
+        closeTrace();
+        eventLog.close();
+    }
+
+    /**
+     * Abre la traza binaria si la configuración la pide. Un error al crearla
+     * se informa en el log y la simulación sigue sin traza.
+     * 
+     * @param clock TraceWriter.CLOCK_WALL o TraceWriter.CLOCK_SIMULATED
+     * @return Traza abierta, o null
+     */
+    private TraceWriter openTrace(int clock) {
+        if (config.getTrace() == null)
+            return null;
+        try {
+            trace = new TraceWriter(config.getTrace(), config.getTraceSegmentMb() * (1L << 20), clock);
+            log("Grabando traza binaria en " + config.getTrace());
+        } catch (IOException e) {
+            eventLog.message(EventLog.Level.WARN, "No se pudo crear la traza: " + e.getMessage());
+        }
+        return trace;
+    }
+
+    /** Cierra la traza (si hay) y registra cuántos eventos se grabaron */
+    private void closeTrace() {
+        TraceWriter t = trace;
+        if (t == null)
+            return;
+        try {
+            if (t.close())
+                log("Traza cerrada: " + t.records() + " eventos en " + config.getTrace());
+        } catch (IOException e) {
+            eventLog.message(EventLog.Level.WARN, "No se pudo cerrar la traza: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Graba un evento en la traza binaria con el reloj real, si está activa.
+     * 
+     * @param type      Tipo de evento (TraceWriter.SPAWN, ARRIVE, ...)
+     * @param vehicleId Vehículo (0 para el semáforo)
+     * @param dir       Dirección afectada
+     * @param value     Dato adicional (permisos libres tras un acquire/release)
+     */
+    private void trace(byte type, int vehicleId, Direction dir, long value) {
+        TraceWriter t = trace;
+        if (t != null)
+            t.record(t.elapsedNanos(), type, vehicleId, dir.ordinal(), value);
+    }
+
+    /**
+     * Inicializa y comienza la simulación de tráfico.
+     * 
+     * Secuencia de inicialización:
+     * 1. Crea e inicializa la interfaz gráfica
+     * 2. Crea el ejecutor (hilos virtuales o de plataforma)
+     * 3. Inicia el controlador de semáforos
+     * 4. Inicia el generador de vehículos
+     * 5. Si hay archivo de configuración, lo vigila para recargarlo en caliente
+     * 
+     * El generador crea vehículos hasta alcanzar el límite configurado,
+     * cada uno con dirección aleatoria y timing variable.
+     */
+    private void start() {
+        // El escritor del log vacía lo pendiente también al cerrar la ventana
+        eventLog.start();
+        TraceWriter t = openTrace(TraceWriter.CLOCK_WALL);
+        if (t != null)
+            t.record(0, TraceWriter.RUN_START, config.getPermits(), -1, config.getSeed());
+        if (config.getMetricsPort() > 0) {
+            try {
+                metricsServer = new MetricsServer(this, config.getMetricsPort());
+                log("Métricas en http://" + metricsServer.address() + "/metrics");
+            } catch (IOException e) {
+                eventLog.message(EventLog.Level.WARN, "No se pudo iniciar el servidor de métricas: " + e.getMessage());
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (metricsServer != null)
+                metricsServer.stop();
+            closeTrace();
+            eventLog.close();
+        }, "EventLog-cierre"));
+
+        // Inicializar la interfaz gráfica
+        createAndShowGUI();
+
+        if (config.getFile() != null) {
+            tickScheduler.scheduleWithFixedDelay(this::reloadConfigFile, 1, 1, TimeUnit.SECONDS);
+        }
+
+        executor = newExecutor();
+
+        // Iniciar el controlador de semáforos en una tarea separada
+        executor.execute(new TrafficLightController());
+
+        // Iniciar el generador de vehículos en una tarea separada
+        executor.execute(() -> {
+            Random r = RandomStreams.spawner(config.getSeed());
+            // Generar vehículos hasta alcanzar el límite máximo
+            while (vehicleCounter < config.getMaxVehicles()) {
+                try {
+                    // Espera según la distribución configurada (por defecto 1-1.8 segundos)
+                    Thread.sleep(config.nextSpawnDelay(r));
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                // Verificación adicional del límite por seguridad
+                if (vehicleCounter >= config.getMaxVehicles()) {
+                    log("Límite de vehículos alcanzado: " + config.getMaxVehicles());
+                    break;
+                }
+
+                // Crear vehículo con dirección aleatoria
+                Direction dir = config.nextDirection(r);
+                Vehicle v = new Vehicle(++vehicleCounter, dir);
+                addVehicleToModel(v);
+                trace(TraceWriter.SPAWN, v.id, dir, 0);
+                // Ejecutar cada vehículo en su propio hilo
+                executor.execute(v);
+            }
+            log("Generación de vehículos completada. Total: " + vehicleCounter);
+        });
+    }
+
+    /**
+     * Recarga el archivo de configuración si cambió desde la última lectura.
+     * Se ejecuta periódicamente en tickScheduler; un archivo inválido se
+     * informa en el log y se conserva la configuración anterior.
+     */
+    private void reloadConfigFile() {
+        try {
+            if (config.reloadIfModified()) {
+                log("Configuración recargada: " + config);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            eventLog.message(EventLog.Level.WARN, "No se pudo recargar " + config.getFile() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Crea el ejecutor de tareas de la simulación.
+     * 
+     * Con virtualThreads se usa Executors.newVirtualThreadPerTaskExecutor(),
+     * que permite cientos de miles de vehículos bloqueados simultáneamente sin
+     * agotar los hilos nativos. Ese método no existe en Java 11, la versión
+     * con la que se compila, así que se invoca por reflexión; si el runtime no
+     * lo tiene (anterior a Java 21) se usan hilos de plataforma (un hilo por
+     * tarea, como en la versión original).
+     * 
+     * @return Ejecutor para vehículos, generador y controlador
+     */
+    private ExecutorService newExecutor() {
+        if (config.isVirtualThreads()) {
+            try {
+                ExecutorService virtual = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                log("Usando hilos virtuales para los vehículos.");
+                return virtual;
+            } catch (ReflectiveOperationException e) {
+                eventLog.message(EventLog.Level.WARN, "Hilos virtuales no disponibles en Java "
+                        + System.getProperty("java.version") + "; usando hilos de plataforma.");
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Añade un vehículo al modelo de datos de forma thread-safe.
+     * Utiliza el semáforo guiLock para evitar condiciones de carrera
+     * al reservar el slot del vehículo y modificar el contador de activos.
+     * 
+     * @param v El vehículo a añadir al sistema
+     */
+    void addVehicleToModel(Vehicle v) {
+        try {
+            guiLock.acquire(); // Adquirir exclusión mutua
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return;
+        }
+        GuiLockEvent hold = new GuiLockEvent();
+        hold.begin();
+        try {
+            v.slot = store.allocate(v.id, v.dir, v.start.x, v.start.y, (float) v.speed, v);
+            activeVehicles++; // Incrementar contador de vehículos activos
+        } finally {
+            guiLock.release(); // Siempre liberar el semáforo
+            hold.commit("add", v.id, v.dir);
+        }
+    }
+
+    /**
+     * Elimina un vehículo del modelo de datos de forma thread-safe.
+     * Además de eliminar el vehículo, verifica si la simulación debe terminar
+     * (cuando no quedan vehículos activos y ya se generaron todos).
+     * 
+     * @param v El vehículo a eliminar del sistema
+     */
+    void removeVehicleFromModel(Vehicle v) {
+        try {
+            guiLock.acquire(); // Adquirir exclusión mutua
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return;
+        }
+        GuiLockEvent hold = new GuiLockEvent();
+        hold.begin();
+        try {
+            store.release(v.slot); // El slot queda libre para reutilizarse
+            activeVehicles--; // Decrementar contador de vehículos activos
+
+            // Verificar condición de terminación de la simulación
+            if (activeVehicles <= 0 && vehicleCounter >= config.getMaxVehicles()) {
+                shouldStop = true;
+                log("Todos los vehículos han terminado. Deteniendo semáforos...");
+            }
+        } finally {
+            guiLock.release(); // Siempre liberar el semáforo
+            hold.commit("remove", v.id, v.dir);
+        }
+    }
+
+    /**
+     * Notifica a todos los vehículos esperando sobre el cambio de luz.
+     * Toma lightLock y llama a signalAll para despertar a todos los
+     * hilos que están esperando en lightChanged.await().
+     * La interfaz gráfica ve el cambio en el siguiente frame publicado.
+     */
+    void notifyLightChange() {
+        lightLock.lock();
+        try {
+            lightChanged.signalAll(); // Despertar a todos los vehículos esperando
+        } finally {
+            lightLock.unlock();
+        }
+    }
+
+    /**
+     * Crea e inicializa la interfaz gráfica de usuario.
+     * 
+     * Configuración de la ventana:
+     * - Título descriptivo de la aplicación
+     * - Tamaño 700x700 píxeles para visualización adecuada
+     * - Centrada en la pantalla
+     * - WorldTicker a tickHz ticks por segundo, que mueve todos los vehículos
+     *   y solicita un único repaint por tick, limitado a la zona que cambió
+     */
+    private void createAndShowGUI() {
+        JFrame frame = new JFrame("Simulación Semáforo - Intersection (Simple) V2");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        panel = new TrafficPanel();
+        store.trackDirty(dirty); // Antes de crear el primer vehículo
+        frame.add(panel);
+        frame.setSize(700, 700);
+        frame.setLocationRelativeTo(null);
+
+        // Tecla L: informe de latencias por fase en el log, sin detener la simulación
+        panel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('l'), "latencias");
+        panel.getActionMap().put("latencias", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                log(phaseStats.report());
+            }
+        });
+        frame.setVisible(true);
+
+        // Planificador único de movimiento y refresco de la GUI
+        tickScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "WorldTicker");
+            t.setDaemon(true);
+            return t;
+        });
+        tickScheduler.scheduleAtFixedRate(new WorldTicker(), 0, 1_000_000_000L / config.getTickHz(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Velocidad de un vehículo en píxeles por segundo.
+     * 
+     * La versión original avanzaba 3 píxeles cada 25-64 ms al azar; ahora la
+     * velocidad es un dato fijo de cada vehículo tomado de esa misma
+     * distribución de pasos.
+     * 
+     * @param u Número aleatorio uniforme en [0, 1)
+     * @return Velocidad en píxeles por segundo (aprox. 46-120 px/s)
+     */
+    static double sampleSpeed(double u) {
+        return 3000.0 / (25 + u * 40);
+    }
+
+    /**
+     * Retardo aleatorio antes de que un vehículo empiece a aproximarse
+     * (200 ms - 1.4 s), tomado de su propio flujo aleatorio.
+     * 
+     * @param seed      Semilla de la simulación
+     * @param vehicleId Vehículo
+     * @return Retardo en milisegundos
+     */
+    static long startDelay(long seed, int vehicleId) {
+        return 200 + (long) (RandomStreams.uniform(seed, vehicleId, RandomStreams.DRAW_START_DELAY) * 1200);
+    }
+
+    /**
+     * Planificador de paso fijo que mueve a todos los vehículos en una sola pasada.
+     * 
+     * En cada tick (1/tickHz segundos simulados):
+     * 1. Toma guiLock una sola vez y avanza cada vehículo en movimiento
+     *    recorriendo las columnas del VehicleStore
+     * 2. Despierta a los vehículos que llegaron a su objetivo
+     * 3. Copia el estado a un FrameSnapshot y lo publica en SnapshotBuffer
+     * 4. Solicita exactamente un repaint del panel, del rectángulo que une lo
+     *    que marcó el almacén (posiciones anteriores y nuevas de los vehículos
+     *    que cambiaron), el texto informativo y los semáforos si cambió la luz
+     * 
+     * Así el número de temporizadores y de repaints por frame es O(1) en lugar
+     * de O(N) vehículos. RepaintManager une las peticiones que el EDT aún no
+     * atendió en una sola pintura pendiente, así que la cola del EDT no crece
+     * aunque el EDT vaya más lento que los ticks.
+     */
+    private class WorldTicker implements Runnable {
+        /** Duración de un tick en segundos */
+        private final float dt = 1.0f / config.getTickHz();
+        /** Luz verde del último frame publicado, para saber si hay que repintar los semáforos */
+        private Direction lastGreen = currentGreen;
+        /** Rectángulo a repintar en el tick actual (repaint lo copia) */
+        private final Rectangle repaintArea = new Rectangle();
+
+        @Override
+        public void run() {
+            try {
+                guiLock.acquire(); // Acceso exclusivo al almacén de vehículos
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            GuiLockEvent hold = new GuiLockEvent();
+            hold.begin();
+            try {
+                int arrived = store.advance(dt);
+                for (int i = 0; i < arrived; i++) {
+                    ((Vehicle) store.owner(store.arrivedSlot(i))).arrival.countDown();
+                }
+
+                // Copiar el estado al frame de escritura (propiedad de este hilo)
+                FrameSnapshot frame = frames.writeBuffer();
+                frame.copyFrom(store);
+                frame.currentGreen = currentGreen;
+                frame.availablePermits = crossingSemaphore.availablePermits();
+                frame.vehicleCounter = vehicleCounter;
+                frame.activeVehicles = activeVehicles;
+                frame.stopped = shouldStop;
+
+                dirty.add(TrafficPanel.HUD_X, TrafficPanel.HUD_Y, TrafficPanel.HUD_W, TrafficPanel.HUD_H);
+                if (frame.currentGreen != lastGreen) {
+                    dirty.add(TrafficPanel.SEMAPHORES_X, TrafficPanel.SEMAPHORES_Y, TrafficPanel.SEMAPHORES_W,
+                            TrafficPanel.SEMAPHORES_H);
+                    lastGreen = frame.currentGreen;
+                }
+                dirty.drainTo(repaintArea);
+            } finally {
+                guiLock.release();
+                hold.commit("tick", 0, null);
+            }
+            frames.publish(); // Sin bloqueos: el EDT tomará este frame en su próximo paint
+
+            panel.repaint(repaintArea); // Un único repaint por tick, solo de la zona que cambió
+            if (shouldStop) {
+                tickScheduler.shutdown(); // Último frame dibujado: detener el planificador
+            }
+        }
+    }
+
+    /**
+     * Controlador automático de semáforos que implementa el ciclo de luces.
+     * 
+     * Esta clase implementa Runnable para ejecutarse en un hilo separado
+     * y gestiona el cambio automático de luces del semáforo:
+     * 
+     * Ciclo de funcionamiento:
+     * 1. Luz verde mientras signalController lo decida (greenMs milisegundos
+     *    con el controlador de tiempo fijo, 4 segundos por defecto)
+     * 2. Luz amarilla por yellowMs milisegundos (2 segundos por defecto)
+     * 3. Cambio de dirección y vuelta al paso 1
+     * 
+     * Utiliza lightLock con la condición lightChanged para despertar
+     * a los vehículos cuando cambia la luz verde.
+     */
+    private class TrafficLightController implements Runnable {
+        /**
+         * Bucle principal del controlador de semáforos.
+         * Ejecuta el ciclo de luces hasta que se active la bandera shouldStop.
+         * 
+         * Para cada dirección:
+         * 1. Activa luz verde y notifica a vehículos esperando
+         * 2. Espera el tiempo configurado para luz verde
+         * 3. Activa luz amarilla (periodo de precaución)
+         * 4. Cambia a la dirección opuesta
+         */
+        @Override
+        public void run() {
+            while (!shouldStop) {
+                // Fase verde: permitir paso de vehículos
+                yellowPhase = false;
+                eventLog.event(EventLog.Code.VERDE, 0, currentGreen);
+                trace(TraceWriter.LIGHT_GREEN, 0, currentGreen, 0);
+                LightPhaseEvent phase = new LightPhaseEvent();
+                phase.begin();
+                notifyLightChange();
+                long greenStart = System.nanoTime();
+                long hold = signalController.holdGreen(currentGreen, 0, sensors);
+                boolean completed = true;
+                // holdGreen es long: se acota y el resto se vuelve a pedir en la siguiente vuelta
+                while (hold > 0 && (completed = sleepWithCheck((int) Math.min(hold, Integer.MAX_VALUE)))) {
+                    long elapsed = (System.nanoTime() - greenStart) / 1_000_000L;
+                    hold = signalController.holdGreen(currentGreen, elapsed, sensors);
+                }
+                phase.commit(currentGreen, "green");
+                if (!completed)
+                    break;
+
+                // Fase amarilla: advertencia de cambio inminente
+                yellowPhase = true;
+                eventLog.event(EventLog.Code.AMARILLO, 0, currentGreen);
+                trace(TraceWriter.LIGHT_YELLOW, 0, currentGreen, 0);
+                phase = new LightPhaseEvent();
+                phase.begin();
+                completed = sleepWithCheck(config.getYellowMs());
+                phase.commit(currentGreen, "yellow");
+                if (!completed)
+                    break;
+
+                // Cambio de dirección: alternar entre NorteSur y EsteOeste
+                currentGreen = (currentGreen == Direction.NorteSur) ? Direction.EsteOeste : Direction.NorteSur;
+                yellowPhase = false;
+                eventLog.event(EventLog.Code.CAMBIO, 0, currentGreen);
+                notifyLightChange();
+            }
+            log("Controlador de semáforos detenido.");
+            log(phaseStats.report());
+            executor.shutdown(); // No se aceptan más tareas; las activas terminan normalmente
+            closeTrace(); // Todos los vehículos ya salieron
+        }
+
+        /**
+         * Duerme por el tiempo especificado mientras verifica periódicamente
+         * si la simulación debe detenerse.
+         * 
+         * @param ms Tiempo a dormir en milisegundos
+         * @return true si completó el tiempo sin interrupción, false si debe parar
+         */
+        private boolean sleepWithCheck(int ms) {
+            try {
+                int sleepInterval = 100; // Verificar cada 100ms si debe parar
+                int elapsed = 0;
+                while (elapsed < ms && !shouldStop) {
+                    Thread.sleep(Math.min(sleepInterval, ms - elapsed));
+                    elapsed += sleepInterval;
+                }
+                return !shouldStop;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Representa un vehículo individual en la simulación.
+     * 
+     * Cada vehículo es un hilo independiente que:
+     * 1. Se aproxima al cruce siguiendo su trayectoria
+     * 2. Espera a que el semáforo esté en verde para su dirección
+     * 3. Adquiere un permiso del semáforo de cruce (máximo 3 simultáneos)
+     * 4. Cruza la intersección y libera el permiso
+     * 5. Sale del sistema y se auto-elimina
+     * 
+     * Estados del vehículo (VehicleState):
+     * - LLEGANDO: Aproximándose al cruce
+     * - ESPERANDO: En el cruce esperando luz verde
+     * - CRUZANDO: Cruzando la intersección (tiene permiso)
+     * - SALIDO: Ha completado su trayecto
+     */
+    class Vehicle implements Runnable {
+        /** Identificador único del vehículo (se muestra como V1, V2, etc.) */
+        final int id;
+        /** Dirección de movimiento del vehículo */
+        final Direction dir;
+        /**
+         * Slot del vehículo en el VehicleStore, donde viven su posición, su
+         * estado y su movimiento en curso
+         */
+        int slot = -1;
+
+        // Puntos clave en la trayectoria del vehículo
+        /** Punto de inicio del recorrido */
+        private final Point start;
+        /** Punto donde debe detenerse antes del cruce */
+        private final Point stop;
+        /** Punto de salida del sistema */
+        private final Point exit;
+        /** Velocidad de movimiento en píxeles por segundo */
+        private final double speed;
+
+        /** Se libera cuando el vehículo alcanza su objetivo (protegido por guiLock) */
+        private CountDownLatch arrival;
+
+        /**
+         * Constructor del vehículo que define la trayectoria según la dirección.
+         * 
+         * Para tráfico NorteSur (vertical):
+         * - Inicia desde arriba (y=-10), se detiene antes del cruce (y=260)
+         * - Sale por abajo (y=720)
+         * 
+         * Para tráfico EsteOeste (horizontal):
+         * - Inicia desde la izquierda (x=-10), se detiene antes del cruce (x=260)
+         * - Sale por la derecha (x=720)
+         * 
+         * @param id  Identificador único del vehículo
+         * @param dir Dirección de movimiento
+         */
+        Vehicle(int id, Direction dir) {
+            this.id = id;
+            this.dir = dir;
+            this.speed = sampleSpeed(RandomStreams.uniform(config.getSeed(), id, RandomStreams.DRAW_SPEED));
+            // Configurar puntos de trayectoria según la dirección
+            if (dir == Direction.NorteSur) {
+                // Tráfico vertical: de norte a sur
+                start = new Point(340, -10); // Arriba, fuera de pantalla
+                stop = new Point(340, 260); // Antes del cruce
+                exit = new Point(340, 720); // Abajo, fuera de pantalla
+            } else {
+                // Tráfico horizontal: de este a oeste
+                start = new Point(-10, 340); // Izquierda, fuera de pantalla
+                stop = new Point(260, 340); // Antes del cruce
+                exit = new Point(720, 340); // Derecha, fuera de pantalla
+            }
+        }
+
+        /**
+         * Lógica principal del comportamiento del vehículo.
+         * 
+         * Implementa el protocolo completo de paso por el cruce:
+         * 1. Retardo inicial aleatorio (simula tiempo de aparición)
+         * 2. Aproximación al punto de parada
+         * 3. Espera por luz verde usando el patrón monitor
+         * 4. Adquisición de permiso de cruce (semáforo contador)
+         * 5. Cruce de la intersección
+         * 6. Liberación de permiso y salida del sistema
+         */
+        @Override
+        public void run() {
+            try {
+                // Retardo inicial aleatorio (200ms - 1.4s)
+                Thread.sleep(startDelay(config.getSeed(), id));
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // FASE 1: Aproximación al cruce
+            eventLog.event(EventLog.Code.APROXIMANDO, id, dir);
+            long phaseStart = System.nanoTime();
+            moveTo(stop);
+            long arrived = System.nanoTime();
+            phaseStats.record(dir, PhaseStats.APPROACH, arrived - phaseStart);
+            setState(VehicleState.ESPERANDO);
+            lastArrival.set(dir.ordinal(), arrived);
+            trace(TraceWriter.ARRIVE, id, dir, 0);
+            eventLog.event(EventLog.Code.ESPERANDO_LUZ, id, dir);
+
+            // FASE 2: Espera por luz verde (cerrojo + variable de condición)
+            lightQueue.incrementAndGet(dir.ordinal());
+            lightLock.lock();
+            try {
+                while (currentGreen != dir) {
+                    lightChanged.await(); // Bloquear hasta signalAll del semáforo
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lightLock.unlock();
+                lightQueue.decrementAndGet(dir.ordinal());
+            }
+            long green = System.nanoTime();
+            phaseStats.record(dir, PhaseStats.LIGHT_WAIT, green - arrived);
+
+            // FASE 3: Adquisición de permiso de cruce
+            permitQueue.incrementAndGet(dir.ordinal());
+            PermitEvent wait = new PermitEvent();
+            wait.begin();
+            try {
+                eventLog.event(EventLog.Code.PIDE_PERMISO, id, dir);
+                crossingSemaphore.acquire(); // Bloquear si ya están cruzando todos los permitidos
+                trace(TraceWriter.PERMIT_ACQUIRE, id, dir, crossingSemaphore.availablePermits());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                permitQueue.decrementAndGet(dir.ordinal());
+            }
+            long permitted = System.nanoTime();
+            phaseStats.record(dir, PhaseStats.PERMIT_WAIT, permitted - green);
+            wait.commit("wait", id, dir);
+            PermitEvent hold = new PermitEvent();
+            hold.begin();
+
+            // FASE 4: Cruce de la intersección
+            setState(VehicleState.CRUZANDO);
+            eventLog.event(EventLog.Code.CRUZANDO, id, dir);
+            moveTo(exit);
+            phaseStats.record(dir, PhaseStats.CROSSING, System.nanoTime() - permitted);
+            crossingSemaphore.release(); // Liberar permiso para otros vehículos
+            hold.commit("hold", id, dir);
+            trace(TraceWriter.PERMIT_RELEASE, id, dir, crossingSemaphore.availablePermits());
+            setState(VehicleState.SALIDO);
+            crossings.increment();
+            trace(TraceWriter.EXIT, id, dir, 0);
+            eventLog.event(EventLog.Code.SALIDO, id, dir);
+
+            // FASE 5: Limpieza y salida del sistema
+            try {
+                Thread.sleep(500); // Pequeña pausa antes de auto-eliminarse
+            } catch (InterruptedException ignored) {
+            }
+            removeVehicleFromModel(this); // Auto-eliminación del sistema
+        }
+
+        /**
+         * Mueve el vehículo hacia el punto objetivo.
+         * 
+         * Registra el objetivo y bloquea el hilo del vehículo hasta que
+         * WorldTicker lo deja en él; el avance por tick depende de la
+         * velocidad del vehículo, no de esperas aleatorias.
+         * 
+         * @param target Punto de destino hacia el cual moverse
+         */
+        private void moveTo(Point target) {
+            CountDownLatch done = new CountDownLatch(1);
+            try {
+                guiLock.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                arrival = done;
+                store.moveTo(slot, target.x, target.y);
+            } finally {
+                guiLock.release();
+            }
+
+            try {
+                done.await(); // WorldTicker libera el latch al llegar
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Cambia el estado del vehículo en el VehicleStore validando la transición.
+         * 
+         * @param state Nuevo estado
+         */
+        private void setState(VehicleState state) {
+            try {
+                guiLock.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                store.transition(slot, state);
+            } finally {
+                guiLock.release();
+            }
+        }
+    }
+
+    /**
+     * Panel personalizado de Swing para la visualización gráfica de la simulación.
+     * 
+     * Responsabilidades:
+     * - Renderizar el cruce de calles y las carreteras
+     * - Dibujar semáforos con estados actuales (rojo/verde)
+     * - Mostrar vehículos con colores según su estado
+     * - Visualizar información del sistema en tiempo real
+     * 
+     * Codificación de colores de vehículos:
+     * - Blanco: Llegando al cruce
+     * - Naranja: Esperando luz verde
+     * - Verde: Cruzando la intersección
+     * - Gris claro: Ha salido del sistema
+     */
+    class TrafficPanel extends JPanel {
+        /** Zona del texto informativo */
+        static final int HUD_X = 0, HUD_Y = 0, HUD_W = 360, HUD_H = 66;
+        /** Zona de los dos semáforos */
+        static final int SEMAPHORES_X = 180, SEMAPHORES_Y = 200, SEMAPHORES_W = 210, SEMAPHORES_H = 230;
+        /** Fuente de las etiquetas de vehículos y semáforos */
+        private final Font labelFont = new Font("Arial", Font.PLAIN, 10);
+        /** Color del área de intersección */
+        private final Color intersectionColor = new Color(70, 70, 70);
+
+        /** Dirección con luz verde del frame que se está dibujando (solo EDT) */
+        private Direction currentGreenLocal = currentGreen;
+
+        /** Color de cada estado de vehículo, indexado por VehicleState.ordinal() */
+        private final Color[] stateColors = {
+                Color.WHITE, // LLEGANDO: aproximándose
+                Color.ORANGE, // ESPERANDO: esperando luz verde
+                Color.GREEN, // CRUZANDO: cruzando intersección
+                Color.LIGHT_GRAY // SALIDO: ha completado el recorrido
+        };
+
+        /** Capa estática (fondo, carreteras, marcas y bases de semáforo); null hasta el primer frame */
+        private BufferedImage staticLayer;
+        /** Texto "V<id>" de la etiqueta que se está dibujando, sin crear Strings */
+        private final char[] labelChars = new char[11];
+        /** Vehículos y glifos de las etiquetas prerenderizados; null hasta el primer frame */
+        private SpriteAtlas atlas;
+        /** Mapa de densidad del nivel de detalle bajo y sus píxeles ARGB */
+        private BufferedImage heatmap;
+        private int[] heatmapPixels;
+        /** Vehículos por píxel del frame en curso */
+        private int[] density;
+        /** Color ARGB según vehículos por píxel (0 = transparente, 255 o más = saturado) */
+        private final int[] heatPalette = buildHeatPalette();
+
+        /**
+         * Método principal de renderizado del panel.
+         * 
+         * Secuencia de dibujado:
+         * 1. Capa estática: fondo, carreteras, intersección, marcas viales y
+         *    bases de los semáforos, rasterizada una vez (ver staticLayer)
+         * 2. Luces de los semáforos con el estado actual
+         * 3. Vehículos, con un nivel de detalle que baja con la cantidad:
+         *    círculos con etiqueta, círculos sin etiqueta (hasta lod-heatmap)
+         *    o mapa de densidad por píxel. Los círculos y las etiquetas se
+         *    copian de un SpriteAtlas (con sprite-atlas=false, las etiquetadas
+         *    se dibujan con fillOval y drawChars)
+         * 4. Información del sistema (texto overlay)
+         * 
+         * Todo el estado dinámico sale del último FrameSnapshot publicado, sin
+         * tomar guiLock, por lo que el EDT nunca espera a la simulación.
+         * 
+         * @param g Contexto gráfico para el renderizado
+         */
+        @Override
+        protected void paintComponent(Graphics g) {
+            paintFrame(g, frames.read());
+        }
+
+        /**
+         * Dibuja un frame concreto; lo usan paintComponent con el último frame
+         * publicado y FrameExporter sobre una imagen fuera de pantalla.
+         * 
+         * @param g     Contexto gráfico
+         * @param frame Frame a dibujar (no se modifica)
+         */
+        void paintFrame(Graphics g, FrameSnapshot frame) {
+            RenderFrameEvent render = new RenderFrameEvent();
+            render.begin();
+            currentGreenLocal = frame.currentGreen;
+
+            // === CAPA ESTÁTICA === (cubre todo el panel, no hace falta super.paintComponent)
+            g.drawImage(staticLayer(), 0, 0, null);
+
+            // === SEMÁFOROS ===
+            g.setFont(labelFont);
+            drawSemaphore(g, 360, 200, "NorteSur"); // Semáforo para tráfico vertical
+            drawSemaphore(g, 180, 360, "EW"); // Semáforo para tráfico horizontal
+
+            // === VEHÍCULOS ===
+            // Recorrido secuencial de las columnas compactas del frame: primero
+            // los círculos (cambiando de color solo al cambiar de estado) y
+            // después todas las etiquetas en negro
+            final int[] ids = frame.ids;
+            final byte[] states = frame.states;
+            final float[] xs = frame.xs;
+            final float[] ys = frame.ys;
+            final int n = frame.count;
+            int r = 8; // Radio del círculo
+            // Solo los vehículos que tocan la zona a repintar (ver DirtyRegion)
+            Rectangle clip = g.getClipBounds();
+            int clipMinX = clip == null ? Integer.MIN_VALUE : clip.x - DirtyRegion.VEHICLE_RIGHT;
+            int clipMaxX = clip == null ? Integer.MAX_VALUE : clip.x + clip.width + DirtyRegion.VEHICLE_LEFT;
+            int clipMinY = clip == null ? Integer.MIN_VALUE : clip.y - DirtyRegion.VEHICLE_BOTTOM;
+            int clipMaxY = clip == null ? Integer.MAX_VALUE : clip.y + clip.height + DirtyRegion.VEHICLE_TOP;
+            if (atlas == null)
+                atlas = new SpriteAtlas(stateColors, labelFont);
+            final byte[] dirs = frame.dirs;
+            if (n >= config.getLodHeatmap()) {
+                drawHeatmap(g, frame);
+            } else if (n >= config.getLodSprites()) {
+                for (int i = 0; i < n; i++) {
+                    if (xs[i] < clipMinX || xs[i] > clipMaxX || ys[i] < clipMinY || ys[i] > clipMaxY)
+                        continue;
+                    atlas.drawVehicle(g, states[i], dirs[i], (int) xs[i], (int) ys[i]);
+                }
+            } else if (config.isSpriteAtlas()) {
+                // Dos copias por vehículo: su círculo y su etiqueta
+                for (int i = 0; i < n; i++) {
+                    if (xs[i] < clipMinX || xs[i] > clipMaxX || ys[i] < clipMinY || ys[i] > clipMaxY)
+                        continue;
+                    atlas.drawVehicle(g, states[i], dirs[i], (int) xs[i], (int) ys[i]);
+                }
+                for (int i = 0; i < n; i++) {
+                    if (xs[i] < clipMinX || xs[i] > clipMaxX || ys[i] < clipMinY || ys[i] > clipMaxY)
+                        continue;
+                    atlas.drawLabel(g, ids[i], labelChars, label(ids[i]), (int) xs[i] - 6, (int) ys[i] - 10);
+                }
+            } else {
+                int color = -1;
+                for (int i = 0; i < n; i++) {
+                    if (xs[i] < clipMinX || xs[i] > clipMaxX || ys[i] < clipMinY || ys[i] > clipMaxY)
+                        continue;
+                    if (states[i] != color) {
+                        color = states[i];
+                        g.setColor(stateColors[color]);
+                    }
+                    g.fillOval((int) xs[i] - r, (int) ys[i] - r, r * 2, r * 2);
+                }
+                g.setColor(Color.BLACK);
+                for (int i = 0; i < n; i++) {
+                    if (xs[i] < clipMinX || xs[i] > clipMaxX || ys[i] < clipMinY || ys[i] > clipMaxY)
+                        continue;
+                    int len = label(ids[i]);
+                    g.drawChars(labelChars, 0, len, (int) xs[i] - 6, (int) ys[i] - 10);
+                }
+            }
+
+            // === INFORMACIÓN DEL SISTEMA ===
+            g.setColor(Color.WHITE);
+            g.drawString(
+                    "Green: " + currentGreenLocal + "    Permits crossing: " + frame.availablePermits,
+                    10, 15);
+            g.drawString("Vehículos generados: " + frame.vehicleCounter + "/" + config.getMaxVehicles(), 10, 30);
+            g.drawString("Vehículos activos: " + frame.activeVehicles, 10, 45);
+            if (frame.stopped) {
+                g.setColor(Color.RED);
+                g.drawString("SIMULACIÓN COMPLETADA", 10, 60);
+            }
+            render.commit(frame);
+        }
+
+        /**
+         * Devuelve la capa estática, rasterizándola de nuevo solo si el panel
+         * cambió de tamaño. Es una imagen compatible con la pantalla cuando la
+         * hay, para que Java2D pueda acelerarla.
+         * 
+         * @return Imagen del tamaño del panel con la geometría fija del cruce
+         */
+        private BufferedImage staticLayer() {
+            int w = Math.max(getWidth(), 1);
+            int h = Math.max(getHeight(), 1);
+            if (staticLayer != null && staticLayer.getWidth() == w && staticLayer.getHeight() == h)
+                return staticLayer;
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            staticLayer = gc != null ? gc.createCompatibleImage(w, h)
+                    : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = staticLayer.createGraphics();
+            try {
+                // Fondo gris oscuro (área no pavimentada)
+                g.setColor(Color.DARK_GRAY);
+                g.fillRect(0, 0, w, h);
+
+                // Carreteras principales (vertical y horizontal)
+                g.setColor(Color.GRAY);
+                g.fillRect(300, 0, 80, h); // Carretera vertical
+                g.fillRect(0, 300, w, 80); // Carretera horizontal
+
+                // Área de intersección
+                g.setColor(intersectionColor);
+                g.fillRect(300, 300, 80, 80);
+
+                // Líneas divisorias blancas (6 segmentos en cada carretera)
+                g.setColor(Color.WHITE);
+                for (int i = 0; i < 6; i++) {
+                    g.fillRect(320, 240 + i * 8, 10, 4);
+                }
+                for (int i = 0; i < 6; i++) {
+                    g.fillRect(240 + i * 8, 320, 4, 10);
+                }
+
+                // Bases de los semáforos (30x70 píxeles)
+                g.setColor(Color.BLACK);
+                g.fillRect(360, 200, 30, 70);
+                g.fillRect(180, 360, 30, 70);
+            } finally {
+                g.dispose();
+            }
+            return staticLayer;
+        }
+
+        /**
+         * Dibuja el frame como mapa de densidad: cuenta los vehículos de cada
+         * píxel en density y escribe el color de heatPalette directamente en
+         * el raster de heatmap, sin pasar por Graphics. El coste es O(N) más
+         * O(píxeles del panel), sin importar cuántos vehículos se superponen.
+         * 
+         * @param g     Contexto gráfico
+         * @param frame Frame a dibujar
+         */
+        private void drawHeatmap(Graphics g, FrameSnapshot frame) {
+            int w = Math.max(getWidth(), 1);
+            int h = Math.max(getHeight(), 1);
+            if (heatmap == null || heatmap.getWidth() != w || heatmap.getHeight() != h) {
+                heatmap = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                heatmapPixels = ((DataBufferInt) heatmap.getRaster().getDataBuffer()).getData();
+                density = new int[w * h];
+            }
+            final float[] xs = frame.xs;
+            final float[] ys = frame.ys;
+            final int[] counts = density;
+            for (int i = 0, n = frame.count; i < n; i++) {
+                int x = (int) xs[i];
+                int y = (int) ys[i];
+                if (x >= 0 && x < w && y >= 0 && y < h)
+                    counts[y * w + x]++;
+            }
+            final int[] pixels = heatmapPixels;
+            final int[] palette = heatPalette;
+            for (int k = 0; k < pixels.length; k++) {
+                int c = counts[k];
+                pixels[k] = palette[c < 255 ? c : 255];
+                counts[k] = 0;
+            }
+            g.drawImage(heatmap, 0, 0, null);
+        }
+
+        /**
+         * Rampa de amarillo a rojo con opacidad creciente, en escala
+         * logarítmica para distinguir tanto un vehículo como cientos.
+         * 
+         * @return 256 colores ARGB; el 0 es transparente
+         */
+        private int[] buildHeatPalette() {
+            int[] palette = new int[256];
+            for (int c = 1; c < 256; c++) {
+                double t = Math.log(1 + c) / Math.log(256);
+                int alpha = (int) (160 + 95 * t);
+                int green = (int) (230 * (1 - t));
+                palette[c] = alpha << 24 | 255 << 16 | green << 8;
+            }
+            return palette;
+        }
+
+        /**
+         * Escribe "V" seguido del id en labelChars.
+         * 
+         * @param id Identificador del vehículo (no negativo)
+         * @return Número de caracteres escritos
+         */
+        private int label(int id) {
+            int digits = 1;
+            for (int v = id; v >= 10; v /= 10)
+                digits++;
+            labelChars[0] = 'V';
+            for (int k = digits; k >= 1; k--) {
+                labelChars[k] = (char) ('0' + id % 10);
+                id /= 10;
+            }
+            return digits + 1;
+        }
+
+        /**
+         * Dibuja las luces de un semáforo con su estado actual. La base negra
+         * ya está en la capa estática.
+         * 
+         * Estructura del semáforo:
+         * - Rectángulo negro como base (30x70 píxeles)
+         * - Tres círculos: rojo (arriba), amarillo (medio), verde (abajo)
+         * - Solo se ilumina la luz correspondiente al estado actual
+         * 
+         * Lógica de estado:
+         * - Luz roja: Cuando la dirección opuesta tiene verde
+         * - Luz amarilla: Siempre apagada (se maneja en el timing)
+         * - Luz verde: Cuando esta dirección tiene paso
+         * 
+         * @param g     Contexto gráfico (con labelFont)
+         * @param sx    Coordenada X del semáforo
+         * @param sy    Coordenada Y del semáforo
+         * @param label Etiqueta identificadora ("NorteSur" o "EW")
+         */
+        private void drawSemaphore(Graphics g, int sx, int sy, String label) {
+            // === LUZ ROJA (superior) ===
+            g.setColor(currentGreenLocal == null ? Color.DARK_GRAY
+                    : (currentGreenLocal == (label.equals("NorteSur") ? Direction.EsteOeste : Direction.NorteSur)
+                            ? Color.RED
+                            : Color.DARK_GRAY));
+            g.fillOval(sx + 5, sy + 5, 20, 20);
+
+            // === LUZ AMARILLA (media) ===
+            g.setColor(Color.DARK_GRAY); // Siempre apagada en esta implementación
+            g.fillOval(sx + 5, sy + 28, 20, 20);
+
+            // === LUZ VERDE (inferior) ===
+            g.setColor(currentGreenLocal == (label.equals("NorteSur") ? Direction.NorteSur : Direction.EsteOeste)
+                    ? Color.GREEN
+                    : Color.DARK_GRAY);
+            g.fillOval(sx + 5, sy + 50, 20, 20);
+
+            // Etiqueta identificadora del semáforo
+            g.setColor(Color.WHITE);
+            g.drawString(label, sx + 4, sy + 68);
+        }
+    }
+
+    /**
+     * Exportación de frames sin pantalla: dibuja con la misma lógica que
+     * TrafficPanel (paintFrame) sobre una BufferedImage de 700x700 y escribe
+     * una secuencia PNG (frame-000000.png, ...) o un flujo RGB crudo, por
+     * ejemplo hacia una tubería de ffmpeg.
+     * 
+     * El hilo de la simulación solo copia el estado a un FrameSnapshot; el
+     * dibujo y la codificación van en un pool de export-workers hilos, cada
+     * uno con su propio panel e imagen. Hay como mucho 2 * export-workers
+     * frames en vuelo: si el pool no da abasto, submit espera en lugar de
+     * acumular memoria. En modo rgb un único hilo escribe los frames en el
+     * orden en que se enviaron.
+     */
+    final class FrameExporter {
+        /** Tamaño de los frames, el de la ventana */
+        static final int WIDTH = 700, HEIGHT = 700;
+
+        private final Path target;
+        private final boolean rgb;
+        private final ExecutorService renderers;
+        /** Escritor ordenado del flujo rgb (null en modo png) */
+        private final ExecutorService writer;
+        private final OutputStream out;
+        private final Semaphore inFlight;
+        private final ArrayBlockingQueue<FrameSnapshot> free;
+        private final ThreadLocal<Renderer> renderer = ThreadLocal.withInitial(Renderer::new);
+        private int frames = 0;
+        /** Primer error de escritura, que close vuelve a lanzar */
+        private volatile IOException failure;
+
+        /** Panel e imagen de un hilo del pool */
+        private final class Renderer {
+            final TrafficPanel panel = new TrafficPanel();
+            final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g = image.createGraphics();
+
+            Renderer() {
+                panel.setSize(WIDTH, HEIGHT);
+            }
+        }
+
+        /**
+         * Abre el destino de export (crea la carpeta o el archivo).
+         * 
+         * @throws IOException si no se puede crear
+         */
+        FrameExporter() throws IOException {
+            this.target = config.getExport();
+            this.rgb = config.isExportRgb();
+            int workers = config.getExportWorkers();
+            if (rgb) {
+                out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 20);
+                writer = Executors.newSingleThreadExecutor(r -> exportThread(r, "Export-escritor"));
+            } else {
+                Files.createDirectories(target);
+                out = null;
+                writer = null;
+            }
+            AtomicInteger threads = new AtomicInteger();
+            renderers = Executors.newFixedThreadPool(workers,
+                    r -> exportThread(r, "Export-" + threads.incrementAndGet()));
+            inFlight = new Semaphore(2 * workers);
+            free = new ArrayBlockingQueue<>(2 * workers);
+            for (int i = 0; i < 2 * workers; i++)
+                free.add(new FrameSnapshot());
+        }
+
+        private Thread exportThread(Runnable r, String name) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }
+
+        /**
+         * Envía un frame: capture lo rellena en el hilo del llamador y el
+         * pool lo dibuja y lo escribe después.
+         * 
+         * @param capture Copia el estado de la simulación al frame
+         */
+        void submit(Consumer<FrameSnapshot> capture) {
+            inFlight.acquireUninterruptibly();
+            FrameSnapshot frame = free.poll(); // Nunca vacío: hay un frame libre por permiso
+            capture.accept(frame);
+            int index = frames++;
+            Future<byte[]> rendered = renderers.submit(() -> render(frame, index));
+            if (rgb)
+                writer.execute(() -> write(rendered));
+        }
+
+        /**
+         * Dibuja un frame y, en modo png, lo guarda.
+         * 
+         * @return Píxeles RGB en modo rgb, null en modo png
+         */
+        private byte[] render(FrameSnapshot frame, int index) {
+            Renderer r = renderer.get();
+            if (!rgb) {
+                // El permiso vuelve siempre, también si falla el dibujo: si no,
+                // submit acabaría esperando para siempre
+                try {
+                    paint(r, frame);
+                    ImageIO.write(r.image, "png", target.resolve(String.format("frame-%06d.png", index)).toFile());
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                } finally {
+                    inFlight.release();
+                }
+                return null;
+            }
+            paint(r, frame); // Un fallo llega a write como ExecutionException
+            int[] pixels = ((DataBufferInt) r.image.getRaster().getDataBuffer()).getData();
+            byte[] bytes = new byte[pixels.length * 3];
+            for (int i = 0, j = 0; i < pixels.length; i++) {
+                int p = pixels[i];
+                bytes[j++] = (byte) (p >> 16);
+                bytes[j++] = (byte) (p >> 8);
+                bytes[j++] = (byte) p;
+            }
+            return bytes;
+        }
+
+        /** Dibuja el frame en la imagen del hilo y lo devuelve a la reserva */
+        private void paint(Renderer r, FrameSnapshot frame) {
+            try {
+                r.panel.paintFrame(r.g, frame);
+            } finally {
+                free.add(frame);
+            }
+        }
+
+        /** Escribe el siguiente frame rgb en orden (hilo escritor) */
+        private void write(Future<byte[]> rendered) {
+            try {
+                if (failure == null)
+                    out.write(rendered.get());
+            } catch (IOException e) {
+                failure = e;
+            } catch (ExecutionException e) {
+                failure = new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        /**
+         * Espera a que se dibujen y escriban todos los frames enviados.
+         * 
+         * @return Frames exportados
+         * @throws IOException          si falló alguna escritura
+         * @throws InterruptedException si se interrumpe la espera
+         */
+        int close() throws IOException, InterruptedException {
+            renderers.shutdown();
+            renderers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (writer != null) {
+                writer.shutdown();
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                out.close();
+            }
+            if (failure != null)
+                throw failure;
+            return frames;
+        }
+    }
+
+    /**
+     * Controlador de tiempo fijo: greenMs de verde sin mirar las colas, como
+     * el ciclo original. Es la referencia para comparar otros controladores.
+     */
+    static final class FixedTimeController implements SignalController {
+        private final SimulationConfig config;
+
+        FixedTimeController(SimulationConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public long holdGreen(Direction green, long elapsedMs, QueueSensors sensors) {
+            return Math.max(0, config.getGreenMs() - elapsedMs);
+        }
+    }
+
+    /**
+     * Controlador accionado por las colas (actuated).
+     * 
+     * Da siempre min-green-ms de verde y después lo prolonga de STEP_MS en
+     * STEP_MS mientras:
+     * - nadie espera en rojo (el verde se queda donde está), o
+     * - quedan vehículos detenidos con verde o el último llegó hace menos de
+     *   gap-ms (la cola aún se está vaciando)
+     * 
+     * sin pasar de max-green-ms si alguien espera en rojo. En cuanto la
+     * dirección con verde se vacía y deja de llegar tráfico, el verde se
+     * corta antes de tiempo (gap-out) en lugar de consumir el resto de un
+     * plazo fijo.
+     */
+    static final class ActuatedController implements SignalController {
+        /** Intervalo entre decisiones una vez cumplido el verde mínimo */
+        static final long STEP_MS = 250;
+
+        private final SimulationConfig config;
+
+        ActuatedController(SimulationConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public long holdGreen(Direction green, long elapsedMs, QueueSensors sensors) {
+            long min = config.getMinGreenMs();
+            long max = Math.max(min, config.getMaxGreenMs());
+            if (elapsedMs < min)
+                return min - elapsedMs;
+            Direction red = green == Direction.NorteSur ? Direction.EsteOeste : Direction.NorteSur;
+            if (sensors.queued(red) == 0)
+                return STEP_MS; // Nadie espera en rojo
+            if (elapsedMs >= max)
+                return 0; // Máximo alcanzado
+            if (sensors.queued(green) > 0 || sensors.sinceArrivalMs(green) < config.getGapMs())
+                return Math.min(STEP_MS, max - elapsedMs);
+            return 0; // Hueco detectado
+        }
+    }
+
+    /**
+     * Controlador de máxima presión (max-pressure), descentralizado: cada
+     * cruce decide solo con sus contadores locales.
+     * 
+     * Tras min-green-ms, cada DECISION_MS compara la presión de las dos
+     * fases (detenidos en la entrada menos ocupación de la salida, por
+     * movimiento) y mantiene el verde mientras la fase actual tenga al menos
+     * tanta presión como la otra. Como en ActuatedController, max-green-ms es
+     * un techo de seguridad: si alguien espera en rojo, el verde nunca pasa
+     * de ahí aunque la presión empate o siga favoreciendo a la fase actual,
+     * para que ningún acceso espere indefinidamente.
+     * 
+     * La presión sale de contadores que se actualizan al llegar y al cruzar
+     * cada vehículo, así que evaluarla cuesta O(1) por cruce y se puede hacer
+     * en cada decisión de miles de cruces.
+     */
+    static final class MaxPressureController implements SignalController {
+        /** Intervalo entre decisiones una vez cumplido el verde mínimo */
+        static final long DECISION_MS = 1000;
+
+        private final SimulationConfig config;
+
+        MaxPressureController(SimulationConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public long holdGreen(Direction green, long elapsedMs, QueueSensors sensors) {
+            long min = config.getMinGreenMs();
+            if (elapsedMs < min)
+                return min - elapsedMs;
+            Direction red = green == Direction.NorteSur ? Direction.EsteOeste : Direction.NorteSur;
+            if (sensors.pressure(red) > sensors.pressure(green))
+                return 0;
+            if (sensors.queued(red) == 0)
+                return DECISION_MS;
+            long left = config.getMaxGreenMs() - elapsedMs;
+            return left <= 0 ? 0 : Math.min(DECISION_MS, left);
+        }
+    }
+
+    /**
+     * Configuración de la simulación con valores por defecto, carga desde
+     * argumentos de línea de comandos y archivo .properties, y API en vivo.
+     * 
+     * Claves (mismo nombre en el archivo y como --clave=valor en la línea de comandos):
+     * - permits: vehículos cruzando simultáneamente (3) [en caliente]
+     * - green-ms / yellow-ms: duración de verde y amarillo (4000 / 2000) [en caliente]
+     * - spawn-ms: intervalo base entre vehículos (1000) [en caliente]
+     * - spawn-jitter-ms: variación del intervalo (800) [en caliente]
+     * - spawn-distribution: uniform, exponential o fixed (uniform) [en caliente]
+     * - ns-share: fracción de vehículos NorteSur (0.5) [en caliente]
+     * - controller: fixed (tiempo fijo), actuated (accionado por las colas) o
+     *   max-pressure (máxima presión) (fixed)
+     * - min-green-ms / max-green-ms: límites del verde accionado y de
+     *   max-pressure (2000 / 10000) [en caliente]
+     * - gap-ms: hueco entre llegadas que corta el verde accionado (1500) [en caliente]
+     * - vehicles: número total de vehículos (20)
+     * - tick-hz: ticks por segundo del WorldTicker (60)
+     * - lod-sprites: vehículos en pantalla a partir de los que se dibujan sin
+     *   etiqueta, como mucho SpriteAtlas.LABEL_CACHE (2000) [en caliente]
+     * - lod-heatmap: vehículos en pantalla a partir de los que se dibuja un
+     *   mapa de densidad (50000) [en caliente]
+     * - sprite-atlas: copiar vehículos y etiquetas de un SpriteAtlas en lugar
+     *   de dibujarlos con fillOval y drawChars (true) [en caliente]
+     * - seed: semilla del generador aleatorio (aleatoria)
+     * - headless, virtual-threads: banderas de modo (también sin =valor)
+     * - log-level: debug, info, warn u off (info) [en caliente]
+     * - log-overflow: block o drop cuando el buffer del log está lleno (block) [en caliente]
+     * - log-buffer: eventos que caben en el buffer del log (8192)
+     * - trace: carpeta donde grabar la traza binaria (sin traza)
+     * - trace-segment-mb: tamaño de cada segmento de la traza (64)
+     * - replay: carpeta de una traza a reproducir sin esperas reales
+     * - metrics-port: puerto local del endpoint /metrics de Prometheus (0 = desactivado)
+     * - export: carpeta de frames PNG o archivo (o tubería) de frames RGB del
+     *   modo headless (sin exportación)
+     * - export-format: png (un archivo por frame) o rgb (flujo crudo de
+     *   700x700x3 bytes por frame) (png)
+     * - export-stride-ms: milisegundos simulados entre frames exportados (100)
+     * - export-workers: hilos que dibujan y codifican los frames (2)
+     * - grid: red de FILASxCOLUMNAS cruces simulada sin GUI (sin red: un solo cruce)
+     * - segment-capacity: vehículos que caben en cada tramo de la red (8)
+     * - workers: hilos que simulan la red en paralelo (1)
+     * - intersection: two-way (dos direcciones y crossingSemaphore) o four-way
+     *   (cuatro accesos con giros y matriz de conflictos, sin GUI) (two-way)
+     * - config: archivo .properties a cargar antes del resto de argumentos
+     * 
+     * Los valores en caliente son volátiles y se leen en cada ciclo; tras cada
+     * cambio se avisa a los observadores (por ejemplo, para redimensionar
+     * crossingSemaphore).
+     */
+    static final class SimulationConfig {
+        /** Distribución del intervalo entre vehículos generados */
+        enum SpawnDistribution {
+            /** spawn-ms + U[0, spawn-jitter-ms), como la versión original */
+            UNIFORM,
+            /** Llegadas de Poisson con media spawn-ms + spawn-jitter-ms / 2 */
+            EXPONENTIAL,
+            /** Siempre spawn-ms */
+            FIXED
+        }
+
+        /** Política de duración del verde (ver SignalController) */
+        enum ControllerType {
+            /** FixedTimeController */
+            FIXED,
+            /** ActuatedController */
+            ACTUATED,
+            /** MaxPressureController */
+            MAX_PRESSURE
+        }
+
+        /** Observador de cambios de configuración */
+        interface Listener {
+            /** @param config Configuración tras el cambio */
+            void configChanged(SimulationConfig config);
+        }
+
+        // Valores que se pueden cambiar en caliente
+        private volatile int permits = 3;
+        private volatile int greenMs = 4000;
+        private volatile int yellowMs = 2000;
+        private volatile int spawnMs = 1000;
+        private volatile int spawnJitterMs = 800;
+        private volatile SpawnDistribution spawnDistribution = SpawnDistribution.UNIFORM;
+        private volatile EventLog.Level logLevel = EventLog.Level.INFO;
+        private volatile EventLog.Overflow logOverflow = EventLog.Overflow.BLOCK;
+        private volatile double nsShare = 0.5;
+        private volatile int minGreenMs = 2000;
+        private volatile int maxGreenMs = 10000;
+        private volatile int gapMs = 1500;
+        private volatile int lodSprites = 2000;
+        private volatile int lodHeatmap = 50000;
+        private volatile boolean spriteAtlas = true;
+
+        // Valores fijados al iniciar la simulación
+        private int maxVehicles = 20;
+        private int tickHz = 60;
+        private long seed = System.nanoTime();
+        private boolean headless = false;
+        private boolean virtualThreads = false;
+        private int logBuffer = 8192;
+        private Path trace;
+        private int traceSegmentMb = 64;
+        private Path replay;
+        private int metricsPort = 0;
+        private Path export;
+        private boolean exportRgb = false;
+        private int exportStrideMs = 100;
+        private int exportWorkers = 2;
+        private int gridRows = 0;
+        private int gridCols = 0;
+        private int segmentCapacity = 8;
+        private int workers = 1;
+        private boolean fourWay = false;
+        private ControllerType controller = ControllerType.FIXED;
+
+        /** Archivo del que se cargó la configuración (null si no hay) */
+        private Path file;
+        private long fileModified;
+
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        /**
+         * Construye una configuración a partir de los argumentos de main.
+         * Si hay --config=archivo se carga primero, y el resto de argumentos
+         * tiene prioridad sobre el archivo.
+         * 
+         * @param args Argumentos de línea de comandos (--clave=valor o --bandera)
+         * @return Configuración resultante
+         * @throws IllegalArgumentException si un argumento es desconocido o inválido
+         * @throws IOException              si no se puede leer el archivo
+         */
+        static SimulationConfig fromArgs(String[] args) throws IOException {
+            SimulationConfig c = new SimulationConfig();
+            for (String arg : args) {
+                if (arg.startsWith("--config=")) {
+                    c.load(Paths.get(arg.substring("--config=".length())));
+                }
+            }
+            for (String arg : args) {
+                if (!arg.startsWith("--"))
+                    throw new IllegalArgumentException("Argumento desconocido: " + arg);
+                int eq = arg.indexOf('=');
+                String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+                String value = eq < 0 ? "true" : arg.substring(eq + 1);
+                if (!key.equals("config"))
+                    c.set(key, value, true);
+            }
+            return c;
+        }
+
+        /**
+         * Carga un archivo .properties y recuerda su ruta para recargas posteriores.
+         * 
+         * @param path Ruta del archivo
+         * @throws IOException si no se puede leer
+         */
+        void load(Path path) throws IOException {
+            this.file = path;
+            this.fileModified = Files.getLastModifiedTime(path).toMillis();
+            apply(readProperties(path), true);
+        }
+
+        /**
+         * Vuelve a leer el archivo si su fecha de modificación cambió.
+         * Solo se aplican los valores en caliente; el resto se ignora.
+         * 
+         * @return true si se recargó
+         * @throws IOException si no se puede leer
+         */
+        boolean reloadIfModified() throws IOException {
+            if (file == null)
+                return false;
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == fileModified)
+                return false;
+            fileModified = modified;
+            apply(readProperties(file), false);
+            return true;
+        }
+
+        private static Properties readProperties(Path path) throws IOException {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                props.load(in);
+            }
+            return props;
+        }
+
+        /**
+         * Valida todas las claves antes de aplicar ninguna, de modo que un
+         * archivo con errores no deja la configuración a medias.
+         */
+        private void apply(Properties props, boolean startup) {
+            SimulationConfig check = copy();
+            for (String key : props.stringPropertyNames())
+                check.set(key, props.getProperty(key).trim(), startup);
+            for (String key : props.stringPropertyNames())
+                set(key, props.getProperty(key).trim(), startup);
+            fireChanged();
+        }
+
+        /**
+         * Asigna una clave a partir de su valor textual.
+         * 
+         * @param key     Nombre de la clave
+         * @param value   Valor textual
+         * @param startup false para ignorar claves que solo valen al iniciar
+         */
+        private void set(String key, String value, boolean startup) {
+            switch (key) {
+                case "permits":
+                    permits = positive(key, value);
+                    return;
+                case "green-ms":
+                    greenMs = positive(key, value);
+                    return;
+                case "yellow-ms":
+                    yellowMs = nonNegative(key, value);
+                    return;
+                case "spawn-ms":
+                    spawnMs = nonNegative(key, value);
+                    return;
+                case "spawn-jitter-ms":
+                    spawnJitterMs = nonNegative(key, value);
+                    return;
+                case "spawn-distribution":
+                    try {
+                        spawnDistribution = SpawnDistribution.valueOf(value.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    }
+                    return;
+                case "log-level":
+                    try {
+                        logLevel = EventLog.Level.valueOf(value.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    }
+                    return;
+                case "log-overflow":
+                    try {
+                        logOverflow = EventLog.Overflow.valueOf(value.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    }
+                    return;
+                case "ns-share":
+                    double share;
+                    try {
+                        share = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    }
+                    if (!(share >= 0.0 && share <= 1.0))
+                        throw new IllegalArgumentException(key + " debe estar entre 0 y 1: " + value);
+                    nsShare = share;
+                    return;
+                case "min-green-ms":
+                    minGreenMs = positive(key, value);
+                    return;
+                case "max-green-ms":
+                    maxGreenMs = positive(key, value);
+                    return;
+                case "gap-ms":
+                    gapMs = nonNegative(key, value);
+                    return;
+                case "lod-sprites":
+                    int sprites = nonNegative(key, value);
+                    if (sprites > SpriteAtlas.LABEL_CACHE)
+                        throw new IllegalArgumentException(key + " no puede superar " + SpriteAtlas.LABEL_CACHE
+                                + " (etiquetas en la caché de SpriteAtlas)");
+                    lodSprites = sprites;
+                    return;
+                case "lod-heatmap":
+                    lodHeatmap = nonNegative(key, value);
+                    return;
+                case "sprite-atlas":
+                    spriteAtlas = Boolean.parseBoolean(value);
+                    return;
+                default:
+                    break;
+            }
+            if (!startup)
+                return; // Las demás claves no se pueden cambiar con la simulación en marcha
+            switch (key) {
+                case "vehicles":
+                    maxVehicles = nonNegative(key, value);
+                    break;
+                case "tick-hz":
+                    tickHz = positive(key, value);
+                    break;
+                case "seed":
+                    try {
+                        seed = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    }
+                    break;
+                case "headless":
+                    headless = Boolean.parseBoolean(value);
+                    break;
+                case "virtual-threads":
+                    virtualThreads = Boolean.parseBoolean(value);
+                    break;
+                case "log-buffer":
+                    logBuffer = positive(key, value);
+                    break;
+                case "trace":
+                    trace = value.isEmpty() ? null : Paths.get(value);
+                    break;
+                case "metrics-port":
+                    metricsPort = nonNegative(key, value);
+                    if (metricsPort > 65535)
+                        throw new IllegalArgumentException("Puerto inválido: " + metricsPort);
+                    break;
+                case "replay":
+                    replay = value.isEmpty() ? null : Paths.get(value);
+                    break;
+                case "export":
+                    export = value.isEmpty() ? null : Paths.get(value);
+                    break;
+                case "export-format":
+                    if (value.equalsIgnoreCase("rgb"))
+                        exportRgb = true;
+                    else if (value.equalsIgnoreCase("png"))
+                        exportRgb = false;
+                    else
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    break;
+                case "export-stride-ms":
+                    exportStrideMs = positive(key, value);
+                    break;
+                case "export-workers":
+                    exportWorkers = positive(key, value);
+                    break;
+                case "grid":
+                    int x = value.toLowerCase().indexOf('x');
+                    if (value.isEmpty()) {
+                        gridRows = 0;
+                        gridCols = 0;
+                    } else if (x < 0) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + " (FILASxCOLUMNAS): " + value);
+                    } else {
+                        int r = positive(key, value.substring(0, x));
+                        int cl = positive(key, value.substring(x + 1));
+                        if ((long) r * cl > (1 << 24))
+                            throw new IllegalArgumentException("Red demasiado grande: " + value);
+                        gridRows = r;
+                        gridCols = cl;
+                    }
+                    break;
+                case "segment-capacity":
+                    segmentCapacity = positive(key, value);
+                    break;
+                case "workers":
+                    workers = positive(key, value);
+                    break;
+                case "controller":
+                    try {
+                        controller = ControllerType.valueOf(value.toUpperCase().replace('-', '_'));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    }
+                    break;
+                case "intersection":
+                    if (value.equalsIgnoreCase("four-way"))
+                        fourWay = true;
+                    else if (value.equalsIgnoreCase("two-way"))
+                        fourWay = false;
+                    else
+                        throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+                    break;
+                case "trace-segment-mb":
+                    traceSegmentMb = positive(key, value);
+                    if (traceSegmentMb > 1024)
+                        throw new IllegalArgumentException(key + " no puede superar 1024");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconocido: " + key);
+            }
+        }
+
+        private static int nonNegative(String key, String value) {
+            int n;
+            try {
+                n = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valor inválido para " + key + ": " + value);
+            }
+            if (n < 0)
+                throw new IllegalArgumentException(key + " no puede ser negativo: " + n);
+            return n;
+        }
+
+        private static int positive(String key, String value) {
+            int n = nonNegative(key, value);
+            if (n == 0)
+                throw new IllegalArgumentException(key + " debe ser positivo");
+            return n;
+        }
+
+        /**
+         * Asigna cualquier clave (incluidas las de inicio) a partir de su valor textual.
+         * 
+         * @param key   Nombre de la clave
+         * @param value Valor textual
+         * @throws IllegalArgumentException si la clave o el valor no son válidos
+         */
+        void set(String key, String value) {
+            set(key, value, true);
+        }
+
+        /** @return Copia independiente (sin observadores ni archivo asociado) */
+        SimulationConfig copy() {
+            SimulationConfig c = new SimulationConfig();
+            c.permits = permits;
+            c.greenMs = greenMs;
+            c.yellowMs = yellowMs;
+            c.spawnMs = spawnMs;
+            c.spawnJitterMs = spawnJitterMs;
+            c.spawnDistribution = spawnDistribution;
+            c.maxVehicles = maxVehicles;
+            c.tickHz = tickHz;
+            c.seed = seed;
+            c.headless = headless;
+            c.virtualThreads = virtualThreads;
+            c.logLevel = logLevel;
+            c.logOverflow = logOverflow;
+            c.logBuffer = logBuffer;
+            c.trace = trace;
+            c.traceSegmentMb = traceSegmentMb;
+            c.replay = replay;
+            c.metricsPort = metricsPort;
+            c.export = export;
+            c.exportRgb = exportRgb;
+            c.exportStrideMs = exportStrideMs;
+            c.exportWorkers = exportWorkers;
+            c.gridRows = gridRows;
+            c.gridCols = gridCols;
+            c.segmentCapacity = segmentCapacity;
+            c.workers = workers;
+            c.fourWay = fourWay;
+            c.controller = controller;
+            c.nsShare = nsShare;
+            c.minGreenMs = minGreenMs;
+            c.maxGreenMs = maxGreenMs;
+            c.gapMs = gapMs;
+            c.lodSprites = lodSprites;
+            c.lodHeatmap = lodHeatmap;
+            c.spriteAtlas = spriteAtlas;
+            return c;
+        }
+
+        /**
+         * Siguiente intervalo entre vehículos según la distribución configurada.
+         * 
+         * @param r Generador aleatorio del llamador
+         * @return Milisegundos hasta el próximo vehículo
+         */
+        long nextSpawnDelay(Random r) {
+            int base = spawnMs;
+            int jitter = spawnJitterMs;
+            switch (spawnDistribution) {
+                case EXPONENTIAL:
+                    double mean = base + jitter / 2.0;
+                    return Math.round(-mean * Math.log(1.0 - r.nextDouble()));
+                case FIXED:
+                    return base;
+                case UNIFORM:
+                default:
+                    return base + (jitter > 0 ? r.nextInt(jitter) : 0);
+            }
+        }
+
+        /**
+         * Dirección de un vehículo nuevo según ns-share. Con el reparto por
+         * defecto se usa nextBoolean, el mismo flujo que antes de existir la
+         * clave, para que las semillas antiguas den la misma secuencia.
+         * 
+         * @param r Generador aleatorio del llamador
+         * @return Dirección del vehículo
+         */
+        Direction nextDirection(Random r) {
+            double share = nsShare;
+            if (share == 0.5)
+                return r.nextBoolean() ? Direction.NorteSur : Direction.EsteOeste;
+            return r.nextDouble() < share ? Direction.NorteSur : Direction.EsteOeste;
+        }
+
+        // ==================== API EN VIVO ====================
+
+        /** @param listener Observador a notificar tras cada cambio */
+        void addListener(Listener listener) {
+            listeners.add(listener);
+        }
+
+        private void fireChanged() {
+            for (Listener l : listeners)
+                l.configChanged(this);
+        }
+
+        /** @param permits Vehículos cruzando simultáneamente (redimensiona el semáforo) */
+        void setPermits(int permits) {
+            set("permits", Integer.toString(permits), false);
+            fireChanged();
+        }
+
+        /** @param greenMs Duración de la luz verde a partir del próximo ciclo */
+        void setGreenMs(int greenMs) {
+            set("green-ms", Integer.toString(greenMs), false);
+            fireChanged();
+        }
+
+        /** @param yellowMs Duración de la luz amarilla a partir del próximo ciclo */
+        void setYellowMs(int yellowMs) {
+            set("yellow-ms", Integer.toString(yellowMs), false);
+            fireChanged();
+        }
+
+        /**
+         * @param distribution Distribución de los intervalos de generación
+         * @param spawnMs      Intervalo base en milisegundos
+         * @param jitterMs     Variación en milisegundos
+         */
+        void setSpawn(SpawnDistribution distribution, int spawnMs, int jitterMs) {
+            set("spawn-ms", Integer.toString(spawnMs), false);
+            set("spawn-jitter-ms", Integer.toString(jitterMs), false);
+            this.spawnDistribution = distribution;
+            fireChanged();
+        }
+
+        /** @param maxVehicles Número total de vehículos (solo antes de iniciar) */
+        void setMaxVehicles(int maxVehicles) {
+            set("vehicles", Integer.toString(maxVehicles), true);
+        }
+
+        /** @param seed Semilla del generador aleatorio (solo antes de iniciar) */
+        void setSeed(long seed) {
+            this.seed = seed;
+        }
+
+        int getPermits() {
+            return permits;
+        }
+
+        int getGreenMs() {
+            return greenMs;
+        }
+
+        int getYellowMs() {
+            return yellowMs;
+        }
+
+        int getSpawnMs() {
+            return spawnMs;
+        }
+
+        int getSpawnJitterMs() {
+            return spawnJitterMs;
+        }
+
+        SpawnDistribution getSpawnDistribution() {
+            return spawnDistribution;
+        }
+
+        int getMaxVehicles() {
+            return maxVehicles;
+        }
+
+        int getTickHz() {
+            return tickHz;
+        }
+
+        long getSeed() {
+            return seed;
+        }
+
+        boolean isHeadless() {
+            return headless;
+        }
+
+        boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        EventLog.Level getLogLevel() {
+            return logLevel;
+        }
+
+        EventLog.Overflow getLogOverflow() {
+            return logOverflow;
+        }
+
+        int getLogBuffer() {
+            return logBuffer;
+        }
+
+        Path getTrace() {
+            return trace;
+        }
+
+        int getTraceSegmentMb() {
+            return traceSegmentMb;
+        }
+
+        Path getReplay() {
+            return replay;
+        }
+
+        int getMetricsPort() {
+            return metricsPort;
+        }
+
+        /** @return Destino de los frames exportados (null si no se exportan) */
+        Path getExport() {
+            return export;
+        }
+
+        /** @return true para un flujo RGB crudo, false para una secuencia PNG */
+        boolean isExportRgb() {
+            return exportRgb;
+        }
+
+        int getExportStrideMs() {
+            return exportStrideMs;
+        }
+
+        int getExportWorkers() {
+            return exportWorkers;
+        }
+
+        /** @return Filas de la red (0 si se simula un solo cruce) */
+        int getGridRows() {
+            return gridRows;
+        }
+
+        /** @return Columnas de la red (0 si se simula un solo cruce) */
+        int getGridCols() {
+            return gridCols;
+        }
+
+        int getSegmentCapacity() {
+            return segmentCapacity;
+        }
+
+        int getWorkers() {
+            return workers;
+        }
+
+        /** @return Política de duración del verde */
+        ControllerType getController() {
+            return controller;
+        }
+
+        double getNsShare() {
+            return nsShare;
+        }
+
+        int getMinGreenMs() {
+            return minGreenMs;
+        }
+
+        int getMaxGreenMs() {
+            return maxGreenMs;
+        }
+
+        int getGapMs() {
+            return gapMs;
+        }
+
+        /** @return Vehículos a partir de los que el panel deja de dibujar etiquetas */
+        int getLodSprites() {
+            return lodSprites;
+        }
+
+        /** @return Vehículos a partir de los que el panel dibuja un mapa de densidad */
+        int getLodHeatmap() {
+            return lodHeatmap;
+        }
+
+        /** @return true si el panel copia los vehículos etiquetados de un SpriteAtlas */
+        boolean isSpriteAtlas() {
+            return spriteAtlas;
+        }
+
+        /** @return true si se simula el cruce de cuatro accesos con giros */
+        boolean isFourWay() {
+            return fourWay;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        /** @return Todas las claves que se pueden cambiar en caliente, más vehicles y controller */
+        @Override
+        public String toString() {
+            return "permits=" + permits + ", green-ms=" + greenMs + ", yellow-ms=" + yellowMs + ", spawn-ms="
+                    + spawnMs + ", spawn-jitter-ms=" + spawnJitterMs + ", spawn-distribution="
+                    + spawnDistribution.name().toLowerCase() + ", ns-share=" + nsShare + ", controller="
+                    + controller.name().toLowerCase().replace('_', '-') + ", min-green-ms=" + minGreenMs
+                    + ", max-green-ms=" + maxGreenMs + ", gap-ms=" + gapMs + ", vehicles=" + maxVehicles
+                    + ", log-level=" + logLevel.name().toLowerCase() + ", log-overflow="
+                    + logOverflow.name().toLowerCase() + ", lod-sprites=" + lodSprites + ", lod-heatmap="
+                    + lodHeatmap + ", sprite-atlas=" + spriteAtlas;
+        }
+    }
+
+    /**
+     * Registro asíncrono de eventos con un buffer circular sin cerrojos.
+     * 
+     * Los hilos productores (vehículos, semáforo) solo reservan una posición
+     * con un CAS, copian el instante, el código de evento, el id de vehículo y
+     * la dirección en arreglos preasignados, y la publican. No construyen
+     * cadenas ni toman el cerrojo de System.out.
+     * 
+     * Un único hilo escritor ("EventLog") recorre las posiciones publicadas en
+     * orden, las formatea por lotes en un StringBuilder reutilizado y escribe
+     * cada lote de una vez.
+     * 
+     * Con el buffer lleno, Overflow.BLOCK hace esperar al productor hasta que
+     * haya espacio y Overflow.DROP descarta el evento (el escritor informa
+     * cuántos se perdieron).
+     */
+    static final class EventLog {
+        /** Nivel mínimo de los eventos que se registran */
+        enum Level {
+            DEBUG, INFO, WARN, OFF
+        }
+
+        /** Qué hacer cuando el buffer está lleno */
+        enum Overflow {
+            /** Esperar a que el escritor libere espacio (no se pierden eventos) */
+            BLOCK,
+            /** Descartar el evento y contarlo */
+            DROP
+        }
+
+        /**
+         * Eventos frecuentes con su texto. En la plantilla, %v es el vehículo
+         * (V1, V2, ...), %d la dirección y %s el texto libre.
+         */
+        enum Code {
+            APROXIMANDO(Level.INFO, "%v (%d) está aproximándose."),
+            ESPERANDO_LUZ(Level.INFO, "%v quiere cruzar - esperando luz %d"),
+            PIDE_PERMISO(Level.DEBUG, "%v trata de adquirir permiso para cruzar..."),
+            CRUZANDO(Level.INFO, ">>> %v está cruzando (permiso adquirido)."),
+            SALIDO(Level.INFO, "<<< %v ha salido del cruce."),
+            VERDE(Level.INFO, "Semáforo: %d -> VERDE"),
+            AMARILLO(Level.INFO, "Semáforo: %d -> AMARILLO"),
+            CAMBIO(Level.INFO, "Semáforo: Cambiando a %d (ahora VERDE)"),
+            MENSAJE(Level.INFO, "%s");
+
+            static final Code[] VALUES = values();
+
+            final Level level;
+            final String template;
+
+            Code(Level level, String template) {
+                this.level = level;
+                this.template = template;
+            }
+        }
+
+        /** Máximo de eventos formateados por escritura */
+        private static final int BATCH = 256;
+        /** Espera del escritor cuando no hay eventos */
+        private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+        // Buffer circular por columnas (posición = secuencia & mask)
+        private final int mask;
+        private final long[] times;
+        private final int[] vehicleIds;
+        private final byte[] codes;
+        private final byte[] dirs;
+        private final String[] texts;
+        /** Secuencia publicada en cada posición (-1 = nunca escrita) */
+        private final AtomicLongArray published;
+
+        /** Próxima secuencia a reservar por los productores */
+        private final AtomicLong tail = new AtomicLong();
+        /** Próxima secuencia a leer por el escritor (solo la escribe el escritor) */
+        private volatile long head = 0;
+
+        private volatile Level level = Level.INFO;
+        private volatile Overflow overflow = Overflow.BLOCK;
+        private final LongAdder dropped = new LongAdder();
+
+        // Estado del escritor
+        private final PrintStream out;
+        private final StringBuilder batch = new StringBuilder(BATCH * 64);
+        private long reportedDropped = 0;
+        private long stampSecond = -1;
+        private String stamp = "";
+        private volatile boolean running = false;
+        private volatile Thread writer;
+
+        /**
+         * @param capacity Eventos que caben en el buffer (se redondea a potencia de dos)
+         * @param out      Destino de las líneas formateadas
+         */
+        EventLog(int capacity, PrintStream out) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            this.mask = size - 1;
+            this.times = new long[size];
+            this.vehicleIds = new int[size];
+            this.codes = new byte[size];
+            this.dirs = new byte[size];
+            this.texts = new String[size];
+            this.published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++)
+                published.set(i, -1);
+            this.out = out;
+        }
+
+        /** Arranca el hilo escritor (una sola vez) */
+        synchronized void start() {
+            if (writer != null)
+                return;
+            running = true;
+            writer = new Thread(this::writeLoop, "EventLog");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        /** Detiene el escritor después de escribir todo lo ya publicado */
+        synchronized void close() {
+            if (writer == null || !running)
+                return;
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void setLevel(Level level) {
+            this.level = level;
+        }
+
+        void setOverflow(Overflow overflow) {
+            this.overflow = overflow;
+        }
+
+        /** @return true si los eventos de ese nivel se registran */
+        boolean isEnabled(Level l) {
+            return l.ordinal() >= level.ordinal();
+        }
+
+        /**
+         * Registra un evento frecuente sin construir cadenas.
+         * 
+         * @param code      Código del evento
+         * @param vehicleId Vehículo (0 si no aplica)
+         * @param dir       Dirección (null si no aplica)
+         */
+        void event(Code code, int vehicleId, Direction dir) {
+            if (isEnabled(code.level))
+                append(code, vehicleId, dir, null);
+        }
+
+        /**
+         * Registra un mensaje de texto ya construido.
+         * 
+         * @param l    Nivel del mensaje
+         * @param text Texto del mensaje
+         */
+        void message(Level l, String text) {
+            if (isEnabled(l))
+                append(Code.MENSAJE, 0, null, text);
+        }
+
+        /** @return Eventos descartados por buffer lleno */
+        long dropped() {
+            return dropped.sum();
+        }
+
+        private void append(Code code, int vehicleId, Direction dir, String text) {
+            long seq = claim();
+            if (seq < 0)
+                return;
+            int i = (int) (seq & mask);
+            times[i] = System.currentTimeMillis();
+            vehicleIds[i] = vehicleId;
+            codes[i] = (byte) code.ordinal();
+            dirs[i] = (byte) (dir == null ? -1 : dir.ordinal());
+            texts[i] = text;
+            published.lazySet(i, seq); // Publica los campos anteriores al escritor
+        }
+
+        /** @return Secuencia reservada, o -1 si el evento se descarta */
+        private long claim() {
+            int spins = 0;
+            while (true) {
+                long seq = tail.get();
+                if (seq - head > mask) { // Buffer lleno
+                    if (overflow == Overflow.DROP) {
+                        dropped.increment();
+                        return -1;
+                    }
+                    Thread w = writer;
+                    if (w != null)
+                        LockSupport.unpark(w); // No esperar a que el escritor despierte solo
+                    if (++spins < 100)
+                        Thread.yield();
+                    else
+                        LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+                    continue;
+                }
+                if (tail.compareAndSet(seq, seq + 1))
+                    return seq;
+            }
+        }
+
+        private void writeLoop() {
+            while (true) {
+                if (drainBatch() > 0)
+                    continue;
+                if (!running)
+                    break; // Nada publicado pendiente: terminar
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            out.flush();
+        }
+
+        /** Formatea y escribe hasta BATCH eventos publicados */
+        private int drainBatch() {
+            StringBuilder sb = batch;
+            sb.setLength(0);
+            long seq = head;
+            int n = 0;
+            while (n < BATCH) {
+                int i = (int) (seq & mask);
+                if (published.get(i) != seq)
+                    break;
+                format(i, sb);
+                texts[i] = null;
+                seq++;
+                n++;
+            }
+            long lost = dropped.sum();
+            if (lost != reportedDropped) {
+                sb.append("[EventLog] ").append(lost - reportedDropped)
+                        .append(" eventos descartados por buffer lleno").append(System.lineSeparator());
+                reportedDropped = lost;
+            }
+            if (sb.length() > 0) {
+                head = seq; // Libera las posiciones para los productores
+                out.append(sb);
+                if (n < BATCH)
+                    out.flush();
+            }
+            return n;
+        }
+
+        /** Escribe la línea del evento en la posición i, como "[HH:mm:ss] texto" */
+        private void format(int i, StringBuilder sb) {
+            long t = times[i];
+            long second = t / 1000;
+            if (second != stampSecond) {
+                stampSecond = second;
+                stamp = String.format("[%tT] ", t);
+            }
+            sb.append(stamp);
+            String template = Code.VALUES[codes[i]].template;
+            for (int k = 0; k < template.length(); k++) {
+                char ch = template.charAt(k);
+                if (ch == '%' && k + 1 < template.length()) {
+                    char spec = template.charAt(++k);
+                    if (spec == 'v')
+                        sb.append('V').append(vehicleIds[i]);
+                    else if (spec == 'd')
+                        sb.append(dirs[i] < 0 ? "-" : DIRECTIONS[dirs[i]].name());
+                    else
+                        sb.append(texts[i]);
+                } else {
+                    sb.append(ch);
+                }
+            }
+            sb.append(System.lineSeparator());
+        }
+    }
+
+    /** Destino de los registros de traza (TraceWriter o TraceFingerprint) */
+    interface TraceSink {
+        /**
+         * @param time      Instante en nanosegundos
+         * @param type      Tipo de evento (TraceWriter.SPAWN, ...)
+         * @param vehicleId Vehículo (0 si no aplica)
+         * @param direction Ordinal de la dirección (-1 si no aplica)
+         * @param value     Dato adicional
+         */
+        void record(long time, byte type, int vehicleId, int direction, long value);
+    }
+
+    /**
+     * Traza binaria de ancho fijo escrita con archivos mapeados en memoria.
+     * 
+     * La traza es una carpeta con segmentos trace-00000.bin, trace-00001.bin,
+     * etc., todos del mismo tamaño. Cada segmento empieza con una cabecera de
+     * HEADER_SIZE bytes (little-endian):
+     * 
+     * - int magic ("TRZ1"), short versión, short tamaño de registro
+     * - int índice del segmento, int reloj (CLOCK_WALL o CLOCK_SIMULATED)
+     * - long registros válidos (se escribe al cerrar), long inicio (epoch ms)
+     * 
+     * y sigue con registros de RECORD_SIZE bytes:
+     * 
+     * - long instante en nanosegundos desde el inicio de la traza
+     * - int vehículo (0 para el semáforo), byte tipo, byte dirección, short 0
+     * - long valor (permisos libres en PERMIT_ACQUIRE / PERMIT_RELEASE)
+     * 
+     * Cada registro se reserva con un único getAndIncrement sobre un contador
+     * global; el índice determina el segmento y la posición, así que los hilos
+     * escriben sin cerrojos en zonas disjuntas del mapeo. Solo el primer hilo
+     * que llega a un segmento nuevo toma el cerrojo para mapearlo.
+     */
+    static final class TraceWriter implements TraceSink {
+        static final int MAGIC = 0x31205A54; // "TRZ1" en little-endian
+        static final short VERSION = 1;
+        static final int HEADER_SIZE = 32;
+        static final int RECORD_SIZE = 24;
+
+        /** Instantes medidos con System.nanoTime desde la apertura */
+        static final int CLOCK_WALL = 0;
+        /** Instantes del reloj simulado del motor de eventos discretos */
+        static final int CLOCK_SIMULATED = 1;
+
+        // Tipos de evento (0 = posición nunca escrita)
+        static final byte SPAWN = 1;
+        static final byte ARRIVE = 2;
+        static final byte LIGHT_GREEN = 3;
+        static final byte LIGHT_YELLOW = 4;
+        static final byte PERMIT_ACQUIRE = 5;
+        static final byte PERMIT_RELEASE = 6;
+        static final byte EXIT = 7;
+        /** Inicio de la ejecución: vehículo = permisos, valor = semilla */
+        static final byte RUN_START = 8;
+
+        /** Nombre de cada tipo, indexado por su código */
+        static final String[] TYPE_NAMES = { "?", "SPAWN", "ARRIVE", "LIGHT_GREEN", "LIGHT_YELLOW",
+                "PERMIT_ACQUIRE", "PERMIT_RELEASE", "EXIT", "RUN_START" };
+
+        private final Path dir;
+        private final long segmentBytes;
+        private final long recordsPerSegment;
+        private final int clock;
+        private final long originNanos = System.nanoTime();
+        private final long originMillis = System.currentTimeMillis();
+
+        /** Próximo registro a reservar */
+        private final AtomicLong next = new AtomicLong();
+        /** Segmentos mapeados (los antiguos se sueltan para que el GC los desmapee) */
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[8];
+        /** Mayor segmento creado (protegido por this) */
+        private int lastSegment = -1;
+        private volatile boolean closed = false;
+
+        /**
+         * @param dir          Carpeta de la traza (se crea si no existe)
+         * @param segmentBytes Tamaño de cada segmento en bytes
+         * @param clock        CLOCK_WALL o CLOCK_SIMULATED
+         * @throws IOException si no se puede crear la carpeta o el primer segmento
+         */
+        TraceWriter(Path dir, long segmentBytes, int clock) throws IOException {
+            this.dir = Files.createDirectories(dir);
+            this.recordsPerSegment = (segmentBytes - HEADER_SIZE) / RECORD_SIZE;
+            this.segmentBytes = HEADER_SIZE + recordsPerSegment * RECORD_SIZE;
+            this.clock = clock;
+            if (recordsPerSegment <= 0)
+                throw new IllegalArgumentException("Segmento de traza demasiado pequeño: " + segmentBytes);
+            mapSegment(0);
+        }
+
+        /** @return Nanosegundos transcurridos desde la apertura (para CLOCK_WALL) */
+        long elapsedNanos() {
+            return System.nanoTime() - originNanos;
+        }
+
+        /** Graba un registro. Seguro desde cualquier número de hilos. */
+        @Override
+        public void record(long time, byte type, int vehicleId, int direction, long value) {
+            if (closed)
+                return;
+            long index = next.getAndIncrement();
+            int segment = (int) (index / recordsPerSegment);
+            int offset = HEADER_SIZE + (int) (index % recordsPerSegment) * RECORD_SIZE;
+            MappedByteBuffer[] segs = segments;
+            MappedByteBuffer buf = segment < segs.length ? segs[segment] : null;
+            if (buf == null) {
+                try {
+                    buf = mapSegment(segment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (buf == null)
+                    return; // close() se adelantó tras la comprobación de arriba
+            }
+            // Puts absolutos: no tocan la posición compartida del buffer
+            buf.putLong(offset, time);
+            buf.putInt(offset + 8, vehicleId);
+            buf.put(offset + 13, (byte) direction);
+            buf.putLong(offset + 16, value);
+            buf.put(offset + 12, type); // El tipo al final: 0 indica registro incompleto
+        }
+
+        /**
+         * Mapea (y si es nuevo, crea) el segmento dado. Vuelve a comprobar
+         * closed con el cerrojo tomado: tras close() las cabeceras ya están
+         * cerradas y no se debe crear ni volver a mapear ningún segmento.
+         * 
+         * @return Segmento mapeado, o null si la traza ya se cerró
+         */
+        private synchronized MappedByteBuffer mapSegment(int segment) throws IOException {
+            if (closed)
+                return null;
+            MappedByteBuffer[] segs = segments;
+            if (segment >= segs.length)
+                segs = Arrays.copyOf(segs, Math.max(segment + 1, segs.length * 2));
+            MappedByteBuffer buf = segs[segment];
+            if (buf != null)
+                return buf;
+            try (FileChannel ch = FileChannel.open(segmentPath(dir, segment), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            }
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (segment > lastSegment) {
+                buf.putInt(0, MAGIC);
+                buf.putShort(4, VERSION);
+                buf.putShort(6, (short) RECORD_SIZE);
+                buf.putInt(8, segment);
+                buf.putInt(12, clock);
+                buf.putLong(16, 0);
+                buf.putLong(24, originMillis);
+                lastSegment = segment;
+                // Los segmentos dos posiciones atrás ya no reciben registros
+                for (int i = 0; i < segment - 1; i++)
+                    segs[i] = null;
+            }
+            segs[segment] = buf;
+            segments = segs;
+            return buf;
+        }
+
+        /** @return Registros reservados hasta ahora */
+        long records() {
+            return next.get();
+        }
+
+        /**
+         * Deja de aceptar registros, escribe en cada cabecera cuántos registros
+         * válidos tiene y fuerza los segmentos aún mapeados a disco.
+         * 
+         * @return false si ya estaba cerrada
+         * @throws IOException si no se pueden actualizar las cabeceras
+         */
+        synchronized boolean close() throws IOException {
+            if (closed)
+                return false;
+            closed = true;
+            long total = Math.min(next.get(), (lastSegment + 1) * recordsPerSegment);
+            ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int s = 0; s <= lastSegment; s++) {
+                long inSegment = Math.min(recordsPerSegment, Math.max(0, total - s * recordsPerSegment));
+                count.clear();
+                count.putLong(0, inSegment);
+                try (FileChannel ch = FileChannel.open(segmentPath(dir, s), StandardOpenOption.WRITE)) {
+                    ch.write(count, 16);
+                }
+            }
+            for (MappedByteBuffer buf : segments) {
+                if (buf != null)
+                    buf.force();
+            }
+            segments = new MappedByteBuffer[0];
+            return true;
+        }
+
+        /** @return Ruta del segmento con el índice dado */
+        static Path segmentPath(Path dir, int segment) {
+            return dir.resolve(String.format("trace-%05d.bin", segment));
+        }
+    }
+
+    /**
+     * Lector secuencial de trazas grabadas con TraceWriter.
+     * 
+     * Recorre los segmentos en orden mapeándolos de a uno en modo lectura y
+     * entrega cada registro a un Visitor con valores primitivos, sin crear
+     * objetos por registro, de modo que puede recorrer gigabytes de traza a la
+     * velocidad del disco.
+     */
+    static final class TraceReader {
+        /** Recibe cada registro válido de la traza */
+        interface Visitor {
+            void record(long time, int vehicleId, int type, int direction, long value);
+        }
+
+        private TraceReader() {
+        }
+
+        /**
+         * Recorre todos los registros de la traza.
+         * 
+         * Los segmentos de una traza que no se cerró (cabecera con 0 registros)
+         * se recorren completos saltando las posiciones nunca escritas.
+         * 
+         * @param dir     Carpeta de la traza
+         * @param visitor Destino de los registros
+         * @return Reloj de la traza (CLOCK_WALL o CLOCK_SIMULATED)
+         * @throws IOException si falta la traza o un segmento no es válido
+         */
+        static int scan(Path dir, Visitor visitor) throws IOException {
+            int clock = -1;
+            for (int s = 0;; s++) {
+                Path path = TraceWriter.segmentPath(dir, s);
+                if (!Files.exists(path)) {
+                    if (s == 0)
+                        throw new IOException("No hay traza en " + dir);
+                    return clock;
+                }
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    buf.order(ByteOrder.LITTLE_ENDIAN);
+                    if (buf.limit() < TraceWriter.HEADER_SIZE || buf.getInt(0) != TraceWriter.MAGIC
+                            || buf.getShort(6) != TraceWriter.RECORD_SIZE)
+                        throw new IOException("Segmento de traza inválido: " + path);
+                    clock = buf.getInt(12);
+                    long count = buf.getLong(16);
+                    long capacity = (buf.limit() - TraceWriter.HEADER_SIZE) / TraceWriter.RECORD_SIZE;
+                    long n = count > 0 ? Math.min(count, capacity) : capacity;
+                    int offset = TraceWriter.HEADER_SIZE;
+                    for (long i = 0; i < n; i++, offset += TraceWriter.RECORD_SIZE) {
+                        byte type = buf.get(offset + 12);
+                        if (type == 0)
+                            continue; // Reservado pero nunca escrito
+                        visitor.record(buf.getLong(offset), buf.getInt(offset + 8), type, buf.get(offset + 13),
+                                buf.getLong(offset + 16));
+                    }
+                    if (count > 0 && count < capacity)
+                        return clock; // Último segmento de una traza cerrada
+                }
+            }
+        }
+
+        /**
+         * Escribe cada registro como una línea de texto.
+         * 
+         * @param dir Carpeta de la traza
+         * @param out Destino
+         * @throws IOException si la traza no se puede leer
+         */
+        static void dump(Path dir, PrintStream out) throws IOException {
+            StringBuilder sb = new StringBuilder(128);
+            scan(dir, (time, vehicleId, type, direction, value) -> {
+                sb.setLength(0);
+                sb.append(String.format(Locale.ROOT, "%.6f", time / 1e9)).append(' ')
+                        .append(type < TraceWriter.TYPE_NAMES.length ? TraceWriter.TYPE_NAMES[type] : "?")
+                        .append(" V").append(vehicleId).append(' ')
+                        .append(direction >= 0 && direction < DIRECTIONS.length ? DIRECTIONS[direction].name() : "-")
+                        .append(' ').append(value);
+                out.println(sb);
+            });
+        }
+
+        /**
+         * Imprime cuántos eventos hay de cada tipo, el intervalo de tiempo
+         * cubierto y la velocidad de lectura.
+         * 
+         * @param dir Carpeta de la traza
+         * @param out Destino
+         * @throws IOException si la traza no se puede leer
+         */
+        static void printStats(Path dir, PrintStream out) throws IOException {
+            long[] counts = new long[TraceWriter.TYPE_NAMES.length];
+            long[] span = { Long.MAX_VALUE, Long.MIN_VALUE };
+            long t0 = System.nanoTime();
+            int clock = scan(dir, (time, vehicleId, type, direction, value) -> {
+                counts[type < counts.length ? type : 0]++;
+                span[0] = Math.min(span[0], time);
+                span[1] = Math.max(span[1], time);
+            });
+            double seconds = (System.nanoTime() - t0) / 1e9;
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0)
+                    out.printf("%-15s %d%n", TraceWriter.TYPE_NAMES[i], counts[i]);
+                total += counts[i];
+            }
+            out.printf(Locale.ROOT, "%d eventos, %.3f s de %s, leídos en %.3f s (%.1f M eventos/s)%n", total,
+                    total == 0 ? 0.0 : (span[1] - span[0]) / 1e9,
+                    clock == TraceWriter.CLOCK_SIMULATED ? "tiempo simulado" : "tiempo real", seconds,
+                    total / Math.max(seconds, 1e-9) / 1e6);
+        }
+    }
+
+    /**
+     * Eventos de Java Flight Recorder con el contexto del dominio.
+     * 
+     * Con una grabación activa (-XX:StartFlightRecording o jcmd JFR.start)
+     * aparecen en JMC bajo la categoría "Tráfico" junto a los eventos del
+     * JDK, de modo que una pausa de GC, un safepoint o una contención de
+     * cerrojo se pueden cruzar con el vehículo y la dirección afectados.
+     * Sin grabación, begin/commit no hacen nada y el JIT elimina el objeto.
+     * 
+     * Las fases de semáforo y los frames no tienen un vehículo concreto, así
+     * que no llevan vehicleId; en GuiLockEvent el tick de WorldTicker lo
+     * marca con 0.
+     */
+    @Name("trafico.LightPhase")
+    @Label("Fase de semáforo")
+    @Category({ "Tráfico", "Semáforos" })
+    @Description("Duración de una fase verde o amarilla de TrafficLightController")
+    static final class LightPhaseEvent extends Event {
+        @Label("Dirección")
+        String direction;
+        @Label("Luz")
+        String light;
+
+        /**
+         * Cierra la fase y la registra si la grabación la acepta.
+         * 
+         * @param dir   Dirección con paso durante la fase
+         * @param light "green" o "yellow"
+         */
+        void commit(Direction dir, String light) {
+            end();
+            if (shouldCommit()) {
+                this.direction = dir.name();
+                this.light = light;
+                commit();
+            }
+        }
+    }
+
+    /** Espera en crossingSemaphore.acquire() o tiempo con el permiso tomado */
+    @Name("trafico.Permit")
+    @Label("Permiso de cruce")
+    @Category({ "Tráfico", "Vehículos" })
+    @Description("Espera (wait) o retención (hold) de un permiso de crossingSemaphore")
+    static final class PermitEvent extends Event {
+        @Label("Vehículo")
+        int vehicleId;
+        @Label("Dirección")
+        String direction;
+        @Label("Tramo")
+        String stage;
+
+        /**
+         * Cierra el tramo y lo registra si la grabación lo acepta.
+         * 
+         * @param stage "wait" o "hold"
+         * @param id    Vehículo
+         * @param dir   Dirección del vehículo
+         */
+        void commit(String stage, int id, Direction dir) {
+            end();
+            if (shouldCommit()) {
+                this.stage = stage;
+                this.vehicleId = id;
+                this.direction = dir.name();
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Tiempo con guiLock tomado. guiLock es un Semaphore, así que el evento
+     * jdk.JavaMonitorEnter de JFR no lo ve.
+     */
+    @Name("trafico.GuiLockHold")
+    @Label("Retención de guiLock")
+    @Category({ "Tráfico", "Interfaz" })
+    @Description("Sección crítica de guiLock en addVehicleToModel, removeVehicleFromModel o WorldTicker")
+    static final class GuiLockEvent extends Event {
+        @Label("Vehículo")
+        int vehicleId;
+        @Label("Dirección")
+        String direction;
+        @Label("Operación")
+        String operation;
+
+        /**
+         * Cierra la sección crítica y la registra si la grabación la acepta.
+         * 
+         * @param operation "add", "remove" o "tick"
+         * @param id        Vehículo afectado (0 en un tick)
+         * @param dir       Dirección del vehículo (null en un tick)
+         */
+        void commit(String operation, int id, Direction dir) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.vehicleId = id;
+                this.direction = dir == null ? null : dir.name();
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Duración de un TrafficPanel.paintComponent. El panel dibuja un
+     * FrameSnapshot sin tomar guiLock, así que aquí solo se mide el frame.
+     */
+    @Name("trafico.RenderFrame")
+    @Label("Frame dibujado")
+    @Category({ "Tráfico", "Interfaz" })
+    @Description("Un paintComponent del panel de la simulación")
+    static final class RenderFrameEvent extends Event {
+        @Label("Dirección con verde")
+        String direction;
+        @Label("Vehículos dibujados")
+        int vehicles;
+
+        /**
+         * Cierra el frame y lo registra si la grabación lo acepta.
+         * 
+         * @param frame Frame dibujado (su dirección es la que tiene verde)
+         */
+        void commit(FrameSnapshot frame) {
+            end();
+            if (shouldCommit()) {
+                this.direction = frame.currentGreen.name();
+                this.vehicles = frame.count;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Endpoint HTTP de métricas en formato de texto de Prometheus, escuchando
+     * solo en la interfaz local.
+     * 
+     * Todas las métricas se leen de campos volátiles, contadores atómicos y
+     * copias de los histogramas de fase: una petición nunca toma guiLock ni
+     * lightLock, así que consultar el endpoint no perturba la simulación.
+     */
+    static final class MetricsServer {
+        /** Cuantiles publicados para cada histograma de fase */
+        private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+        private static final String[] PHASE_LABELS = { "approach", "light_wait", "permit_wait", "crossing" };
+
+        private final TrafficSemaphoreSimulationV2 sim;
+        private final HttpServer server;
+
+        /**
+         * Arranca el servidor. Las peticiones se atienden en un hilo demonio
+         * propio, pero el hilo despachador de HttpServer no es demonio: hay
+         * que llamar a stop() (lo hace el gancho de cierre de start()).
+         * 
+         * @param sim  Simulación a observar
+         * @param port Puerto local
+         * @throws IOException si no se puede abrir el puerto
+         */
+        MetricsServer(TrafficSemaphoreSimulationV2 sim, int port) throws IOException {
+            this.sim = sim;
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", this::handle);
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "MetricsServer");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+        }
+
+        /** @return host:puerto en el que escucha */
+        String address() {
+            InetSocketAddress a = server.getAddress();
+            return a.getHostString() + ":" + a.getPort();
+        }
+
+        /** Detiene el servidor y su hilo despachador sin esperar a las peticiones en curso */
+        void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            try {
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /** @return Todas las métricas en formato de exposición de texto */
+        String render() {
+            StringBuilder sb = new StringBuilder(4096);
+            gauge(sb, "trafico_active_vehicles", "Vehículos en el sistema", sim.activeVehicles);
+            counter(sb, "trafico_vehicles_spawned_total", "Vehículos generados", sim.vehicleCounter);
+            counter(sb, "trafico_crossings_total", "Vehículos que completaron el cruce", sim.crossings.sum());
+            gauge(sb, "trafico_available_permits", "Permisos libres en crossingSemaphore",
+                    sim.crossingSemaphore.availablePermits());
+            gauge(sb, "trafico_permit_capacity", "Capacidad de crossingSemaphore", sim.crossingSemaphore.capacity());
+
+            header(sb, "trafico_queue_length", "Vehículos detenidos por dirección y motivo", "gauge");
+            for (Direction d : DIRECTIONS) {
+                sample(sb, "trafico_queue_length", "direction=\"" + d + "\",queue=\"light\"",
+                        sim.lightQueue.get(d.ordinal()));
+                sample(sb, "trafico_queue_length", "direction=\"" + d + "\",queue=\"permit\"",
+                        sim.permitQueue.get(d.ordinal()));
+            }
+
+            Direction green = sim.currentGreen;
+            boolean yellow = sim.yellowPhase;
+            header(sb, "trafico_light_state", "1 para la luz actual de cada dirección", "gauge");
+            for (Direction d : DIRECTIONS) {
+                String light = d != green ? "red" : yellow ? "yellow" : "green";
+                for (String l : new String[] { "green", "yellow", "red" })
+                    sample(sb, "trafico_light_state", "direction=\"" + d + "\",light=\"" + l + "\"",
+                            l.equals(light) ? 1 : 0);
+            }
+
+            header(sb, "trafico_phase_duration_seconds", "Duración de cada fase de Vehicle.run", "summary");
+            for (int phase = 0; phase < PHASE_LABELS.length; phase++) {
+                for (Direction d : DIRECTIONS) {
+                    LatencyHistogram h = sim.phaseStats.snapshot(d, phase);
+                    String labels = "phase=\"" + PHASE_LABELS[phase] + "\",direction=\"" + d + "\"";
+                    for (double q : QUANTILES)
+                        sample(sb, "trafico_phase_duration_seconds", labels + ",quantile=\"" + q + "\"",
+                                h.percentile(q * 100) / 1e9);
+                    sample(sb, "trafico_phase_duration_seconds_sum", labels, h.mean() * h.count() / 1e9);
+                    sample(sb, "trafico_phase_duration_seconds_count", labels, h.count());
+                }
+            }
+
+            counter(sb, "trafico_log_dropped_total", "Eventos de log descartados", sim.eventLog.dropped());
+            return sb.toString();
+        }
+
+        private static void header(StringBuilder sb, String name, String help, String type) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+
+        private static void gauge(StringBuilder sb, String name, String help, double value) {
+            header(sb, name, help, "gauge");
+            sample(sb, name, null, value);
+        }
+
+        private static void counter(StringBuilder sb, String name, String help, double value) {
+            header(sb, name, help, "counter");
+            sample(sb, name, null, value);
+        }
+
+        private static void sample(StringBuilder sb, String name, String labels, double value) {
+            sb.append(name);
+            if (labels != null)
+                sb.append('{').append(labels).append('}');
+            sb.append(' ');
+            if (value == Math.rint(value) && Math.abs(value) < 1e15)
+                sb.append((long) value);
+            else
+                sb.append(value);
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * Semáforo contador cuya capacidad se puede cambiar en caliente.
+     * 
+     * Al crecer se liberan los permisos nuevos; al reducirse se descuentan con
+     * reducePermits, que puede dejar el contador en negativo: los vehículos que
+     * ya cruzan devuelven sus permisos normalmente y el semáforo converge a la
+     * nueva capacidad sin perder ni inventar permisos.
+     */
+    static final class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        /** Capacidad total actual */
+        private int capacity;
+
+        /** @param permits Capacidad inicial */
+        ResizableSemaphore(int permits) {
+            super(permits);
+            this.capacity = permits;
+        }
+
+        /**
+         * Cambia la capacidad total del semáforo.
+         * 
+         * @param newCapacity Nueva capacidad (mayor que cero)
+         */
+        synchronized void resize(int newCapacity) {
+            int delta = newCapacity - capacity;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+            capacity = newCapacity;
+        }
+
+        /** @return Capacidad total actual */
+        synchronized int capacity() {
+            return capacity;
+        }
+    }
+
+    /**
+     * Atlas de sprites del panel: una sola imagen ARGB con el círculo de cada
+     * estado de vehículo en cada dirección (una raya más oscura indica el eje
+     * de marcha) y, debajo, los glifos de "V" y de los dígitos. Dibujar un
+     * vehículo es una copia de una celda con drawImage y su etiqueta otra,
+     * sin setColor, setFont ni rasterizar texto en cada frame: la etiqueta
+     * completa se compone una vez con los glifos en una caché indexada por
+     * id. SimulationConfig limita lod-sprites a LABEL_CACHE, así que los
+     * vehículos etiquetados de un frame caben en la caché; con más, ids que
+     * comparten entrada se expulsarían entre sí y se recompondrían en cada
+     * frame.
+     */
+    static final class SpriteAtlas {
+        /** Lado de la celda de un vehículo (círculo de radio 8) */
+        static final int CELL = 16;
+        /** Caracteres de la fila de glifos: 'V' y '0'..'9' */
+        private static final String GLYPHS = "V0123456789";
+        /** Etiquetas en caché; un id ocupa la entrada id % LABEL_CACHE */
+        static final int LABEL_CACHE = 2048;
+
+        private final BufferedImage image;
+        /** Desplazamiento y ancho de cada glifo en la fila de glifos */
+        private final int[] glyphX = new int[GLYPHS.length()];
+        private final int[] glyphW = new int[GLYPHS.length()];
+        /** Primera fila de los glifos en la imagen */
+        private final int glyphTop;
+        /** Distancia de la línea base al borde superior y alto de los glifos */
+        private final int ascent;
+        private final int glyphH;
+        /** Etiqueta compuesta de cada entrada de la caché y el id que contiene (0 = vacía) */
+        private final BufferedImage[] labels = new BufferedImage[LABEL_CACHE];
+        private final int[] labelIds = new int[LABEL_CACHE];
+
+        /**
+         * @param stateColors Color de cada estado, indexado por VehicleState.ordinal()
+         * @param font        Fuente de las etiquetas (se dibujan en negro)
+         */
+        SpriteAtlas(Color[] stateColors, Font font) {
+            // Métricas de la fuente medidas sobre una imagen auxiliar
+            BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D pg = probe.createGraphics();
+            FontMetrics metrics = pg.getFontMetrics(font);
+            pg.dispose();
+            ascent = metrics.getAscent();
+            glyphH = metrics.getAscent() + metrics.getDescent();
+            int glyphsWidth = 0;
+            for (int k = 0; k < GLYPHS.length(); k++) {
+                glyphX[k] = glyphsWidth;
+                glyphW[k] = metrics.charWidth(GLYPHS.charAt(k));
+                glyphsWidth += glyphW[k];
+            }
+
+            int directions = DIRECTIONS.length;
+            glyphTop = CELL;
+            image = new BufferedImage(Math.max(stateColors.length * directions * CELL, glyphsWidth),
+                    CELL + glyphH, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = image.createGraphics();
+            try {
+                for (int s = 0; s < stateColors.length; s++) {
+                    for (int d = 0; d < directions; d++) {
+                        int x = (s * directions + d) * CELL;
+                        g.setColor(stateColors[s]);
+                        g.fillOval(x, 0, CELL, CELL);
+                        g.setColor(stateColors[s].darker());
+                        if (DIRECTIONS[d] == Direction.NorteSur)
+                            g.fillRect(x + CELL / 2 - 1, 4, 2, CELL - 8);
+                        else
+                            g.fillRect(x + 4, CELL / 2 - 1, CELL - 8, 2);
+                    }
+                }
+                g.setFont(font);
+                g.setColor(Color.BLACK);
+                for (int k = 0; k < GLYPHS.length(); k++)
+                    g.drawString(GLYPHS.substring(k, k + 1), glyphX[k], glyphTop + ascent);
+            } finally {
+                g.dispose();
+            }
+        }
+
+        /**
+         * Copia el círculo de un vehículo centrado en (cx, cy).
+         * 
+         * @param state VehicleState.ordinal()
+         * @param dir   Direction.ordinal()
+         */
+        void drawVehicle(Graphics g, int state, int dir, int cx, int cy) {
+            int sx = (state * DIRECTIONS.length + dir) * CELL;
+            int dx = cx - CELL / 2;
+            int dy = cy - CELL / 2;
+            g.drawImage(image, dx, dy, dx + CELL, dy + CELL, sx, 0, sx + CELL, CELL, null);
+        }
+
+        /**
+         * Copia la etiqueta "V<id>", como drawChars(chars, 0, len, x, baseline).
+         * 
+         * @param id       Identificador del vehículo (positivo)
+         * @param chars    Caracteres de la etiqueta ('V' y dígitos), para componerla si no está en caché
+         * @param len      Número de caracteres
+         * @param x        Inicio del texto
+         * @param baseline Línea base del texto
+         */
+        void drawLabel(Graphics g, int id, char[] chars, int len, int x, int baseline) {
+            int entry = id % LABEL_CACHE;
+            if (labelIds[entry] != id) {
+                labels[entry] = composeLabel(chars, len);
+                labelIds[entry] = id;
+            }
+            g.drawImage(labels[entry], x, baseline - ascent, null);
+        }
+
+        /** @return Imagen de la etiqueta compuesta con los glifos del atlas */
+        private BufferedImage composeLabel(char[] chars, int len) {
+            int width = 0;
+            for (int i = 0; i < len; i++)
+                width += glyphW[glyph(chars[i])];
+            BufferedImage label = new BufferedImage(Math.max(width, 1), glyphH, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = label.createGraphics();
+            try {
+                int x = 0;
+                for (int i = 0; i < len; i++) {
+                    int k = glyph(chars[i]);
+                    g.drawImage(image, x, 0, x + glyphW[k], glyphH, glyphX[k], glyphTop, glyphX[k] + glyphW[k],
+                            glyphTop + glyphH, null);
+                    x += glyphW[k];
+                }
+            } finally {
+                g.dispose();
+            }
+            return label;
+        }
+
+        /** @return Índice del glifo de 'V' o de un dígito */
+        private static int glyph(char c) {
+            return c == 'V' ? 0 : c - '0' + 1;
+        }
+    }
+
+    /**
+     * Acumulador del rectángulo del panel que hay que repintar. Cada marca
+     * amplía los límites con enteros, sin crear objetos, y drainTo entrega la
+     * unión y vuelve a dejarlo vacío. No es thread-safe: quien lo comparte lo
+     * protege con su cerrojo (guiLock en el modo con hilos).
+     */
+    static final class DirtyRegion {
+        /** Margen de un vehículo respecto a su centro: círculo de radio 8 y etiqueta "V<id>" encima */
+        static final int VEHICLE_LEFT = 9, VEHICLE_RIGHT = 50, VEHICLE_TOP = 22, VEHICLE_BOTTOM = 9;
+
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+
+        /** Marca la zona que ocupa un vehículo dibujado en (x, y) */
+        void addVehicle(float x, float y) {
+            int ix = (int) x;
+            int iy = (int) y;
+            if (ix - VEHICLE_LEFT < minX)
+                minX = ix - VEHICLE_LEFT;
+            if (iy - VEHICLE_TOP < minY)
+                minY = iy - VEHICLE_TOP;
+            if (ix + VEHICLE_RIGHT > maxX)
+                maxX = ix + VEHICLE_RIGHT;
+            if (iy + VEHICLE_BOTTOM > maxY)
+                maxY = iy + VEHICLE_BOTTOM;
+        }
+
+        /** Marca un rectángulo */
+        void add(int x, int y, int w, int h) {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x + w);
+            maxY = Math.max(maxY, y + h);
+        }
+
+        /** @return true si no hay nada marcado */
+        boolean isEmpty() {
+            return minX > maxX;
+        }
+
+        /**
+         * Copia la unión marcada en out (vacío si no hay nada) y reinicia.
+         * 
+         * @param out Rectángulo destino
+         */
+        void drainTo(Rectangle out) {
+            if (isEmpty())
+                out.setBounds(0, 0, 0, 0);
+            else
+                out.setBounds(minX, minY, maxX - minX, maxY - minY);
+            minX = minY = Integer.MAX_VALUE;
+            maxX = maxY = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Almacén de vehículos organizado por columnas (structure of arrays).
+     * 
+     * Cada vehículo ocupa un slot con columnas primitivas:
+     * - ids (int), dirs (byte, ordinal de Direction), states (byte, ordinal de
+     *   VehicleState o FREE), flags (byte)
+     * - xs, ys, targetXs, targetYs, speeds (float)
+     * - owners (Object[], referencia al Vehicle), solo en el modo con hilos:
+     *   se crea al asignar el primer dueño, así que el motor de eventos
+     *   discretos nunca lo reserva
+     * 
+     * Las columnas primitivas ocupan 27 bytes por vehículo y la pila de slots
+     * libres 4 más: 31 bytes con eventos discretos y 35-39 en el modo con
+     * hilos, donde owners suma una referencia de 4 u 8 bytes según se usen
+     * punteros comprimidos o no. Un objeto Vehicle con sus Point y String
+     * ocupa cientos de bytes. Los recorridos de actualización y de
+     * renderizado son secuenciales sobre arreglos contiguos, lo que
+     * aprovecha la caché.
+     * 
+     * Los slots liberados se reutilizan (pila LIFO), por lo que highWater()
+     * crece solo con el máximo de vehículos simultáneos.
+     * 
+     * No es thread-safe: el modo con hilos lo protege con guiLock y el motor
+     * de eventos discretos lo usa desde un único hilo.
+     */
+    static final class VehicleStore {
+        /** Estado de un slot libre */
+        static final byte FREE = -1;
+
+        /** Bit de flags: el vehículo tiene un movimiento pendiente */
+        private static final byte MOVING = 1;
+
+        // Columnas (accesibles para los bucles de renderizado)
+        int[] ids;
+        byte[] dirs;
+        byte[] states;
+        byte[] flags;
+        float[] xs;
+        float[] ys;
+        float[] targetXs;
+        float[] targetYs;
+        float[] speeds;
+
+        /** Dueño opcional de cada slot (el Vehicle en el modo con hilos) */
+        private Object[] owners;
+
+        /** Pila de slots libres */
+        private int[] freeSlots;
+        private int freeCount = 0;
+        /** Primer slot nunca usado; los recorridos llegan hasta aquí */
+        private int highWater = 0;
+        /** Vehículos vivos */
+        private int size = 0;
+
+        /** Observadores de transiciones de estado */
+        private VehicleTransitionListener[] listeners = new VehicleTransitionListener[0];
+
+        /** Slots que llegaron a su objetivo en el último advance() */
+        private int[] arrived = new int[16];
+        private int arrivedCount = 0;
+
+        /** Zona a repintar por los cambios visibles (null si no hay GUI) */
+        private DirtyRegion dirty;
+
+        /**
+         * @param initialCapacity Capacidad inicial (crece al doble cuando se llena)
+         */
+        VehicleStore(int initialCapacity) {
+            int cap = Math.max(1, initialCapacity);
+            ids = new int[cap];
+            dirs = new byte[cap];
+            states = new byte[cap];
+            flags = new byte[cap];
+            xs = new float[cap];
+            ys = new float[cap];
+            targetXs = new float[cap];
+            targetYs = new float[cap];
+            speeds = new float[cap];
+            freeSlots = new int[cap];
+            Arrays.fill(states, FREE);
+        }
+
+        /**
+         * Reserva un slot para un vehículo nuevo en estado LLEGANDO y lo notifica
+         * a los observadores como transición desde null.
+         * 
+         * @param id    Identificador del vehículo
+         * @param dir   Dirección de movimiento
+         * @param x     Posición inicial X
+         * @param y     Posición inicial Y
+         * @param speed Velocidad en píxeles por segundo
+         * @param owner Objeto asociado al slot (puede ser null)
+         * @return Índice del slot asignado
+         */
+        int allocate(int id, Direction dir, float x, float y, float speed, Object owner) {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (highWater == ids.length)
+                    grow();
+                slot = highWater++;
+            }
+            ids[slot] = id;
+            dirs[slot] = (byte) dir.ordinal();
+            states[slot] = (byte) VehicleState.LLEGANDO.ordinal();
+            flags[slot] = 0;
+            xs[slot] = x;
+            ys[slot] = y;
+            speeds[slot] = speed;
+            if (owner != null) {
+                if (owners == null)
+                    owners = new Object[ids.length];
+                owners[slot] = owner;
+            }
+            size++;
+            if (dirty != null)
+                dirty.addVehicle(x, y);
+            for (VehicleTransitionListener l : listeners)
+                l.onTransition(id, dir, null, VehicleState.LLEGANDO);
+            return slot;
+        }
+
+        /**
+         * Libera un slot para que pueda reutilizarse.
+         * 
+         * @param slot Slot a liberar
+         */
+        void release(int slot) {
+            if (dirty != null)
+                dirty.addVehicle(xs[slot], ys[slot]);
+            states[slot] = FREE;
+            flags[slot] = 0;
+            if (owners != null)
+                owners[slot] = null;
+            freeSlots[freeCount++] = slot;
+            size--;
+        }
+
+        /** Duplica la capacidad de todas las columnas */
+        private void grow() {
+            int cap = ids.length * 2;
+            ids = Arrays.copyOf(ids, cap);
+            dirs = Arrays.copyOf(dirs, cap);
+            states = Arrays.copyOf(states, cap);
+            flags = Arrays.copyOf(flags, cap);
+            xs = Arrays.copyOf(xs, cap);
+            ys = Arrays.copyOf(ys, cap);
+            targetXs = Arrays.copyOf(targetXs, cap);
+            targetYs = Arrays.copyOf(targetYs, cap);
+            speeds = Arrays.copyOf(speeds, cap);
+            freeSlots = Arrays.copyOf(freeSlots, cap);
+            if (owners != null)
+                owners = Arrays.copyOf(owners, cap);
+            Arrays.fill(states, highWater, cap, FREE);
+        }
+
+        /**
+         * Hace que cada cambio visible (alta, baja, movimiento o cambio de
+         * estado) marque la zona que ocupaba y la que ocupa el vehículo.
+         * 
+         * @param dirty Acumulador compartido con quien repinta
+         */
+        void trackDirty(DirtyRegion dirty) {
+            this.dirty = dirty;
+        }
+
+        /**
+         * Registra un observador de transiciones de estado.
+         * 
+         * @param listener Observador a añadir
+         */
+        void addTransitionListener(VehicleTransitionListener listener) {
+            listeners = Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+        }
+
+        /**
+         * Cambia el estado de un vehículo validando la transición y notifica a
+         * los observadores.
+         * 
+         * @param slot Slot del vehículo
+         * @param to   Nuevo estado
+         * @throws IllegalStateException si la transición no es válida
+         */
+        void transition(int slot, VehicleState to) {
+            byte code = states[slot];
+            if (code == FREE)
+                throw new IllegalStateException("Slot libre: " + slot);
+            VehicleState from = VehicleState.VALUES[code];
+            if (!from.canTransitionTo(to))
+                throw new IllegalStateException("Transición inválida V" + ids[slot] + ": " + from + " -> " + to);
+            states[slot] = (byte) to.ordinal();
+            if (dirty != null)
+                dirty.addVehicle(xs[slot], ys[slot]);
+            for (VehicleTransitionListener l : listeners)
+                l.onTransition(ids[slot], DIRECTIONS[dirs[slot]], from, to);
+        }
+
+        /** @return Estado del vehículo en el slot */
+        VehicleState state(int slot) {
+            return VehicleState.VALUES[states[slot]];
+        }
+
+        /** Coloca un vehículo directamente en una posición */
+        void setPosition(int slot, float x, float y) {
+            if (dirty != null) {
+                dirty.addVehicle(xs[slot], ys[slot]);
+                dirty.addVehicle(x, y);
+            }
+            xs[slot] = x;
+            ys[slot] = y;
+        }
+
+        /** Inicia un movimiento hacia (tx, ty) que avanzará advance() */
+        void moveTo(int slot, float tx, float ty) {
+            targetXs[slot] = tx;
+            targetYs[slot] = ty;
+            flags[slot] |= MOVING;
+        }
+
+        /**
+         * Avanza durante dt segundos a todos los vehículos en movimiento
+         * (interpolación lineal a velocidad constante). Con trackDirty marca
+         * la posición de partida y la de llegada de cada uno.
+         * 
+         * @param dt Duración del paso en segundos
+         * @return Número de vehículos que llegaron a su objetivo; sus slots se
+         *         consultan con arrivedSlot(i)
+         */
+        int advance(float dt) {
+            arrivedCount = 0;
+            final byte[] f = flags;
+            final float[] x = xs, y = ys, tx = targetXs, ty = targetYs, v = speeds;
+            final DirtyRegion d = dirty;
+            for (int i = 0, n = highWater; i < n; i++) {
+                if ((f[i] & MOVING) == 0)
+                    continue;
+                if (d != null)
+                    d.addVehicle(x[i], y[i]);
+                float dx = tx[i] - x[i];
+                float dy = ty[i] - y[i];
+                float dist = (float) Math.sqrt(dx * dx + dy * dy);
+                float step = v[i] * dt;
+                if (dist <= step) {
+                    // Posicionamiento exacto en el objetivo
+                    x[i] = tx[i];
+                    y[i] = ty[i];
+                    f[i] &= ~MOVING;
+                    if (arrivedCount == arrived.length)
+                        arrived = Arrays.copyOf(arrived, arrivedCount * 2);
+                    arrived[arrivedCount++] = i;
+                } else {
+                    float k = step / dist;
+                    x[i] += dx * k;
+                    y[i] += dy * k;
+                }
+                if (d != null)
+                    d.addVehicle(x[i], y[i]);
+            }
+            return arrivedCount;
+        }
+
+        /** @return Slot del i-ésimo vehículo que llegó en el último advance() */
+        int arrivedSlot(int i) {
+            return arrived[i];
+        }
+
+        /** @return Objeto asociado al slot (null si no tiene) */
+        Object owner(int slot) {
+            return owners == null ? null : owners[slot];
+        }
+
+        /** @return Dirección del vehículo en el slot */
+        Direction dir(int slot) {
+            return DIRECTIONS[dirs[slot]];
+        }
+
+        /** @return Límite superior (exclusivo) de los slots usados */
+        int highWater() {
+            return highWater;
+        }
+
+        /** @return Número de vehículos vivos */
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Copia compacta del estado visible de la simulación en un instante.
+     * 
+     * Solo contiene los vehículos vivos, en posiciones contiguas, más los
+     * datos del panel de información. La escribe un único hilo (WorldTicker)
+     * y, una vez publicada en SnapshotBuffer, solo la lee el renderizador.
+     */
+    static final class FrameSnapshot {
+        /** Vehículos en el frame */
+        int count;
+        int[] ids = new int[0];
+        byte[] dirs = new byte[0];
+        byte[] states = new byte[0];
+        float[] xs = new float[0];
+        float[] ys = new float[0];
+
+        // Información del sistema
+        Direction currentGreen = Direction.NorteSur;
+        int availablePermits;
+        int vehicleCounter;
+        int activeVehicles;
+        boolean stopped;
+
+        /**
+         * Copia los vehículos vivos del almacén (el llamador debe tenerlo protegido).
+         * Las columnas solo se reasignan cuando crece el número de vehículos.
+         * 
+         * @param store Almacén de origen
+         */
+        void copyFrom(VehicleStore store) {
+            int needed = store.size();
+            if (ids.length < needed) {
+                int cap = Math.max(needed, ids.length * 2);
+                ids = new int[cap];
+                dirs = new byte[cap];
+                states = new byte[cap];
+                xs = new float[cap];
+                ys = new float[cap];
+            }
+            int k = 0;
+            final byte[] srcStates = store.states;
+            for (int i = 0, n = store.highWater(); i < n; i++) {
+                if (srcStates[i] == VehicleStore.FREE)
+                    continue;
+                ids[k] = store.ids[i];
+                dirs[k] = store.dirs[i];
+                states[k] = srcStates[i];
+                xs[k] = store.xs[i];
+                ys[k] = store.ys[i];
+                k++;
+            }
+            count = k;
+        }
+    }
+
+    /**
+     * Triple buffer sin bloqueos entre un escritor (la simulación) y un
+     * lector (el renderizador).
+     * 
+     * Hay tres frames: el de escritura (solo escritor), el de lectura (solo
+     * lector) y uno intermedio cuyo índice vive en un AtomicInteger junto a un
+     * bit de "frame nuevo". Publicar y leer son un getAndSet: ninguno de los
+     * dos lados espera nunca al otro, y el lector siempre ve un frame completo
+     * (el getAndSet establece la relación happens-before con las escrituras).
+     */
+    static final class SnapshotBuffer {
+        /** Bit que indica que el frame intermedio aún no ha sido leído */
+        private static final int FRESH = 4;
+        private static final int INDEX_MASK = 3;
+
+        private final FrameSnapshot[] buffers = { new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot() };
+        /** Índice del frame intermedio (más FRESH si es nuevo) */
+        private final AtomicInteger middle = new AtomicInteger(2);
+        /** Frame de escritura (solo lo toca el escritor) */
+        private int back = 0;
+        /** Frame de lectura (solo lo toca el lector) */
+        private int front = 1;
+
+        /** @return Frame que el escritor puede rellenar */
+        FrameSnapshot writeBuffer() {
+            return buffers[back];
+        }
+
+        /** Publica el frame de escritura y toma el intermedio como nuevo frame de escritura */
+        void publish() {
+            back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+        }
+
+        /** @return Último frame publicado (o el mismo de la lectura anterior si no hay uno nuevo) */
+        FrameSnapshot read() {
+            if ((middle.get() & FRESH) != 0) {
+                front = middle.getAndSet(front) & INDEX_MASK;
+            }
+            return buffers[front];
+        }
+    }
+
+    /**
+     * Cola FIFO de enteros sobre un arreglo circular (sin boxing).
+     * Usada por el motor de eventos discretos para las colas de slots.
+     */
+    static final class IntQueue {
+        private int[] items = new int[16];
+        private int head = 0;
+        private int size = 0;
+
+        /** Añade un elemento al final */
+        void add(int value) {
+            if (size == items.length) {
+                int[] bigger = new int[items.length * 2];
+                for (int i = 0; i < size; i++)
+                    bigger[i] = items[(head + i) & (items.length - 1)];
+                items = bigger;
+                head = 0;
+            }
+            items[(head + size) & (items.length - 1)] = value;
+            size++;
+        }
+
+        /** @return Primer elemento, o -1 si la cola está vacía */
+        int poll() {
+            if (size == 0)
+                return -1;
+            int value = items[head];
+            head = (head + 1) & (items.length - 1);
+            size--;
+            return value;
+        }
+
+        /** @return Primer elemento sin quitarlo, o -1 si la cola está vacía */
+        int peek() {
+            return size == 0 ? -1 : items[head];
+        }
+
+        /** @return Número de elementos en la cola */
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Motor de simulación de eventos discretos (sin GUI ni Thread.sleep).
+     * 
+     * Reproduce la misma semántica que el modo con hilos:
+     * - Ciclo de semáforo verde (greenMs) / amarillo (yellowMs) / cambio
+     * - Generación de vehículos según la distribución configurada
+     * - Retardo inicial, aproximación, espera de luz, cruce y salida
+     * - Máximo de N vehículos cruzando (permisos FIFO)
+     * 
+     * En lugar de dormir, cada fase se programa como un evento en un calendario
+     * (cola de prioridad ordenada por tiempo simulado). El reloj salta
+     * directamente al siguiente evento, por lo que la simulación avanza tan
+     * rápido como lo permita la CPU.
+     * 
+     * La duración de cada movimiento es distancia / velocidad, con la
+     * velocidad de cada vehículo tomada de sampleSpeed igual que en Vehicle.
+     * 
+     * Los vehículos viven en un VehicleStore (sin objetos por vehículo) y los
+     * eventos y colas solo guardan el índice de su slot.
+     */
+    static final class DiscreteEventSimulation {
+        /** Fin del plazo de verde: el controlador lo prolonga o pasa a amarillo */
+        private static final int EV_LIGHT_YELLOW = 0;
+        /** Fin del amarillo: cambio de dirección */
+        private static final int EV_LIGHT_SWITCH = 1;
+        /** El generador crea un nuevo vehículo */
+        private static final int EV_SPAWN = 2;
+        /** Fin del retardo inicial: el vehículo empieza a aproximarse */
+        private static final int EV_APPROACH = 3;
+        /** El vehículo llega al punto de parada */
+        private static final int EV_ARRIVE = 4;
+        /** El vehículo termina de cruzar y libera el permiso */
+        private static final int EV_CROSSED = 5;
+        /** Fin de la pausa de salida: el vehículo abandona el sistema */
+        private static final int EV_REMOVE = 6;
+        /** Cambio de luz leído del guion de reproducción (slot = índice en el guion) */
+        private static final int EV_SCRIPTED_LIGHT = 7;
+
+        /** Distancia de inicio a parada (igual para ambas direcciones) */
+        private static final double APPROACH_DISTANCE = 270.0;
+        /** Distancia de parada a salida (igual para ambas direcciones) */
+        private static final double CROSS_DISTANCE = 460.0;
+
+        // Puntos de la trayectoria por ordinal de Direction (mismos que Vehicle)
+        private static final float[] START_X = { 340, -10 }, START_Y = { -10, 340 };
+        private static final float[] STOP_X = { 340, 260 }, STOP_Y = { 260, 340 };
+        private static final float[] EXIT_X = { 340, 720 }, EXIT_Y = { 720, 340 };
+
+        /** Evento del calendario; se reutilizan para no generar basura */
+        private static final class Event {
+            long time;
+            long seq;
+            int type;
+            /** Slot del vehículo afectado, o -1 */
+            int slot;
+        }
+
+        /** Tiempos y distribución de generación (se leen en cada evento) */
+        private final SimulationConfig config;
+        private final int maxVehicles;
+        private final long seed;
+        /** Flujo del generador (intervalos y direcciones), igual que en el modo con hilos */
+        private final Random spawner;
+
+        /** Guion de reproducción (null en una simulación normal) */
+        private final ReplayScript script;
+        /** Próximo vehículo, cambio de luz y concesión del guion */
+        private int spawnIndex = 0;
+        private int lightIndex = 0;
+        private int admitIndex = 0;
+        /** Slots con luz verde listos para recibir permiso (solo en reproducción) */
+        private boolean[] ready = new boolean[1024];
+        /** Slots marcados en ready: la cola de permisos de la reproducción */
+        private int readyCount = 0;
+        /** Slot de cada vehículo por id (solo en reproducción) */
+        private int[] slotById = new int[1024];
+
+        /** Calendario de eventos ordenado por tiempo y orden de inserción */
+        private final PriorityQueue<Event> calendar = new PriorityQueue<>(64,
+                (a, b) -> a.time != b.time ? Long.compare(a.time, b.time) : Long.compare(a.seq, b.seq));
+        /** Eventos libres para reutilizar */
+        private final ArrayDeque<Event> eventPool = new ArrayDeque<>();
+        /** Vehículos activos (id, dirección, velocidad, estado, posición) */
+        private final VehicleStore store = new VehicleStore(1024);
+        /** Instante en que cada slot llegó al punto de parada */
+        private long[] arrivedAt = new long[1024];
+        /** Instante en que cada slot vio la luz verde y pidió permiso */
+        private long[] requestedAt = new long[1024];
+        /** Slots detenidos esperando la luz verde, por dirección */
+        private final IntQueue waitingNorteSur = new IntQueue();
+        private final IntQueue waitingEsteOeste = new IntQueue();
+        /** Slots con luz verde bloqueados esperando un permiso (FIFO) */
+        private final IntQueue permitQueue = new IntQueue();
+        /** Vehículos detenidos (luz o permiso) por dirección, para el controlador */
+        private final int[] stoppedByDir = new int[DIRECTIONS.length];
+        /** Instante de la última llegada a la línea de parada por dirección (-1: ninguna) */
+        private final long[] lastArrival = { -1, -1 };
+        /** Decide cuánto dura cada verde */
+        private final SignalController controller;
+        /** Instante en que empezó el verde actual */
+        private long greenStart = 0;
+        /** Colas del motor tal como las ve el controlador */
+        private final QueueSensors sensors = new QueueSensors() {
+            @Override
+            public int queued(Direction d) {
+                return stoppedByDir[d.ordinal()];
+            }
+
+            @Override
+            public long sinceArrivalMs(Direction d) {
+                long t = lastArrival[d.ordinal()];
+                return t < 0 ? Long.MAX_VALUE : now - t;
+            }
+        };
+
+        // Estado de la simulación
+        private long now = 0;
+        private long seq = 0;
+        private Direction currentGreen = Direction.NorteSur;
+        private int availablePermits;
+        private int vehicleCounter = 0;
+        private int activeVehicles = 0;
+        private boolean stopped = false;
+
+        /** Traza con reloj simulado (null si no hay) */
+        private TraceSink trace;
+
+        /** Exportación de frames (null si no hay) y próximo instante a exportar */
+        private FrameExporter exporter;
+        private long nextFrameAt = 0;
+        /** Inicio y duración del movimiento en curso de cada slot (solo con exportación) */
+        private long[] moveStart = new long[0];
+        private long[] moveMs = new long[0];
+
+        // Estadísticas
+        private long eventsProcessed = 0;
+        private long crossings = 0;
+        /** Espera desde la llegada al punto de parada hasta obtener permiso (ms) */
+        private final LatencyHistogram waitHistogram = new LatencyHistogram();
+        /** Duración simulada de cada fase, como en Vehicle.run */
+        private final PhaseStats phaseStats = new PhaseStats();
+        private int maxPermitQueue = 0;
+        /** Vehículos detenidos (en rojo o esperando permiso) */
+        private int queued = 0;
+        private int maxQueued = 0;
+        /** Integral de queued en el tiempo, para la longitud media de cola */
+        private long queueArea = 0;
+        private long lastQueueChange = 0;
+
+        /**
+         * El límite de vehículos, los permisos y la semilla se fijan al crear
+         * el motor; los tiempos de semáforo y de generación se leen de la
+         * configuración cada vez que se programan.
+         * 
+         * @param config Configuración de la simulación
+         */
+        DiscreteEventSimulation(SimulationConfig config) {
+            this(config, null);
+        }
+
+        /**
+         * Motor que reproduce una traza: la semilla, los permisos, las llegadas,
+         * los cambios de luz y el orden de concesión salen del guion.
+         * 
+         * @param config Configuración (tiempos de luz si el guion se acaba)
+         * @param script Guion de reproducción, o null para simular normalmente
+         */
+        DiscreteEventSimulation(SimulationConfig config, ReplayScript script) {
+            this.config = config;
+            this.script = script;
+            this.maxVehicles = script != null ? script.spawnCount : config.getMaxVehicles();
+            this.availablePermits = script != null ? script.permits : config.getPermits();
+            this.seed = script != null ? script.seed : config.getSeed();
+            this.spawner = RandomStreams.spawner(seed);
+            this.controller = SignalController.create(config);
+        }
+
+        /** @param trace Destino de los cambios de estado (null para ninguno) */
+        void setTrace(TraceSink trace) {
+            this.trace = trace;
+        }
+
+        /**
+         * Exporta un frame cada export-stride-ms simulados. Las posiciones se
+         * interpolan en el momento del frame a partir del inicio y la duración
+         * del movimiento en curso de cada vehículo.
+         * 
+         * @param exporter Destino de los frames (null para ninguno)
+         */
+        void setExporter(FrameExporter exporter) {
+            this.exporter = exporter;
+        }
+
+        /**
+         * Ejecuta la simulación hasta que todos los vehículos han salido.
+         * El primer verde corresponde a NorteSur, igual que en el modo con hilos.
+         */
+        void run() {
+            trace(TraceWriter.RUN_START, availablePermits, -1, seed);
+            if (script == null) {
+                trace(TraceWriter.LIGHT_GREEN, 0, currentGreen.ordinal(), 0);
+                schedule(controller.holdGreen(currentGreen, 0, sensors), EV_LIGHT_YELLOW, -1);
+                if (maxVehicles > 0) {
+                    schedule(config.nextSpawnDelay(spawner), EV_SPAWN, -1);
+                } else {
+                    stopped = true;
+                }
+            } else {
+                if (script.lightCount > 0 && script.lightTimes[0] == 0
+                        && script.lightTypes[0] == TraceWriter.LIGHT_GREEN) {
+                    // Verde inicial: se graba antes de programar nada, como arriba
+                    currentGreen = DIRECTIONS[script.lightDirs[0]];
+                    trace(TraceWriter.LIGHT_GREEN, 0, currentGreen.ordinal(), 0);
+                    lightIndex = 1;
+                }
+                nextScriptedLight();
+                if (maxVehicles > 0) {
+                    schedule(script.spawnTimes[0], EV_SPAWN, -1);
+                } else {
+                    stopped = true;
+                }
+            }
+
+            while (!stopped) {
+                Event e = calendar.poll();
+                if (e == null)
+                    break;
+                if (exporter != null)
+                    exportUntil(e.time);
+                now = e.time;
+                eventsProcessed++;
+                dispatch(e.type, e.slot);
+                eventPool.push(e);
+            }
+            if (exporter != null)
+                exportUntil(now); // Último frame, con la simulación completada
+        }
+
+        /** Exporta los frames pendientes hasta el instante time (incluido) */
+        private void exportUntil(long time) {
+            while (nextFrameAt <= time) {
+                long at = nextFrameAt;
+                exporter.submit(frame -> captureFrame(frame, at));
+                nextFrameAt += config.getExportStrideMs();
+            }
+        }
+
+        /**
+         * Copia el estado al frame con las posiciones del instante at: los
+         * vehículos que se aproximan o cruzan se colocan en el punto de su
+         * recorrido que les corresponde.
+         */
+        private void captureFrame(FrameSnapshot frame, long at) {
+            frame.copyFrom(store);
+            int k = 0;
+            for (int i = 0, n = store.highWater(); i < n; i++) {
+                byte state = store.states[i];
+                if (state == VehicleStore.FREE)
+                    continue;
+                if (moveMs[i] > 0 && (state == VehicleState.LLEGANDO.ordinal()
+                        || state == VehicleState.CRUZANDO.ordinal())) {
+                    int d = store.dirs[i];
+                    float t = Math.min(1f, (float) (at - moveStart[i]) / moveMs[i]);
+                    boolean approaching = state == VehicleState.LLEGANDO.ordinal();
+                    float fromX = approaching ? START_X[d] : STOP_X[d];
+                    float fromY = approaching ? START_Y[d] : STOP_Y[d];
+                    float toX = approaching ? STOP_X[d] : EXIT_X[d];
+                    float toY = approaching ? STOP_Y[d] : EXIT_Y[d];
+                    frame.xs[k] = fromX + (toX - fromX) * t;
+                    frame.ys[k] = fromY + (toY - fromY) * t;
+                }
+                k++;
+            }
+            frame.currentGreen = currentGreen;
+            frame.availablePermits = availablePermits;
+            frame.vehicleCounter = vehicleCounter;
+            frame.activeVehicles = activeVehicles;
+            frame.stopped = stopped;
+        }
+
+        /** Apunta el movimiento que empieza ahora en un slot (solo si se exporta) */
+        private void startMotion(int slot, long durationMs) {
+            if (exporter == null)
+                return;
+            if (slot >= moveStart.length) {
+                moveStart = Arrays.copyOf(moveStart, store.ids.length);
+                moveMs = Arrays.copyOf(moveMs, store.ids.length);
+            }
+            moveStart[slot] = now;
+            moveMs[slot] = durationMs;
+        }
+
+        /**
+         * Ejecuta la acción asociada a un tipo de evento.
+         * 
+         * @param type Tipo de evento (EV_*)
+         * @param slot Slot del vehículo afectado (-1 para eventos del semáforo/generador)
+         */
+        private void dispatch(int type, int slot) {
+            switch (type) {
+                case EV_LIGHT_YELLOW:
+                    long hold = controller.holdGreen(currentGreen, now - greenStart, sensors);
+                    if (hold > 0) {
+                        schedule(hold, EV_LIGHT_YELLOW, -1);
+                        break;
+                    }
+                    trace(TraceWriter.LIGHT_YELLOW, 0, currentGreen.ordinal(), 0);
+                    schedule(config.getYellowMs(), EV_LIGHT_SWITCH, -1);
+                    break;
+                case EV_LIGHT_SWITCH:
+                    currentGreen = (currentGreen == Direction.NorteSur) ? Direction.EsteOeste : Direction.NorteSur;
+                    greenStart = now;
+                    trace(TraceWriter.LIGHT_GREEN, 0, currentGreen.ordinal(), 0);
+                    // Equivalente a lightChanged.signalAll(): despiertan los de la nueva dirección
+                    IntQueue released = waitingFor(currentGreen);
+                    int w;
+                    while ((w = released.poll()) >= 0) {
+                        requestPermit(w);
+                    }
+                    if (script == null || admitIndex < script.acquireCount)
+                        schedule(controller.holdGreen(currentGreen, 0, sensors), EV_LIGHT_YELLOW, -1);
+                    break;
+                case EV_SPAWN:
+                    int d = script != null ? script.spawnDirs[spawnIndex] : config.nextDirection(spawner).ordinal();
+                    int id = ++vehicleCounter;
+                    int created = store.allocate(id, DIRECTIONS[d], START_X[d], START_Y[d],
+                            (float) sampleSpeed(RandomStreams.uniform(seed, id, RandomStreams.DRAW_SPEED)), null);
+                    activeVehicles++;
+                    startMotion(created, 0); // Quieto en el inicio hasta EV_APPROACH
+                    trace(TraceWriter.SPAWN, id, d, 0);
+                    schedule(startDelay(seed, id), EV_APPROACH, created);
+                    if (script != null) {
+                        if (id >= slotById.length)
+                            slotById = Arrays.copyOf(slotById, Math.max(id + 1, slotById.length * 2));
+                        slotById[id] = created;
+                        if (++spawnIndex < script.spawnCount)
+                            schedule(script.spawnTimes[spawnIndex] - now, EV_SPAWN, -1);
+                    } else if (vehicleCounter < maxVehicles) {
+                        schedule(config.nextSpawnDelay(spawner), EV_SPAWN, -1);
+                    }
+                    break;
+                case EV_SCRIPTED_LIGHT:
+                    byte lightType = script.lightTypes[slot];
+                    Direction lightDir = DIRECTIONS[script.lightDirs[slot]];
+                    if (lightType == TraceWriter.LIGHT_YELLOW) {
+                        trace(TraceWriter.LIGHT_YELLOW, 0, lightDir.ordinal(), 0);
+                    } else {
+                        currentGreen = lightDir;
+                        greenStart = now;
+                        trace(TraceWriter.LIGHT_GREEN, 0, lightDir.ordinal(), 0);
+                        IntQueue green = waitingFor(currentGreen);
+                        int g;
+                        while ((g = green.poll()) >= 0) {
+                            requestPermit(g);
+                        }
+                    }
+                    nextScriptedLight();
+                    break;
+                case EV_APPROACH:
+                    long approach = moveDuration(APPROACH_DISTANCE, store.speeds[slot]);
+                    phaseStats.record(DIRECTIONS[store.dirs[slot]], PhaseStats.APPROACH, approach * 1_000_000L);
+                    startMotion(slot, approach);
+                    schedule(approach, EV_ARRIVE, slot);
+                    break;
+                case EV_ARRIVE:
+                    int dir = store.dirs[slot];
+                    store.setPosition(slot, STOP_X[dir], STOP_Y[dir]);
+                    store.transition(slot, VehicleState.ESPERANDO);
+                    if (slot >= arrivedAt.length) {
+                        arrivedAt = Arrays.copyOf(arrivedAt, store.ids.length);
+                        requestedAt = Arrays.copyOf(requestedAt, store.ids.length);
+                    }
+                    arrivedAt[slot] = now;
+                    stoppedByDir[dir]++;
+                    lastArrival[dir] = now;
+                    queueChanged(1);
+                    trace(TraceWriter.ARRIVE, store.ids[slot], dir, 0);
+                    if (currentGreen.ordinal() == dir) {
+                        requestPermit(slot);
+                    } else {
+                        waitingFor(DIRECTIONS[dir]).add(slot);
+                    }
+                    break;
+                case EV_CROSSED:
+                    int exitDir = store.dirs[slot];
+                    trace(TraceWriter.PERMIT_RELEASE, store.ids[slot], exitDir, availablePermits + 1);
+                    if (script != null) {
+                        availablePermits++;
+                        admitScripted();
+                    } else {
+                        int next = permitQueue.poll();
+                        if (next >= 0) {
+                            grantPermit(next); // El permiso pasa directamente al siguiente en la cola
+                        } else {
+                            availablePermits++;
+                        }
+                    }
+                    store.setPosition(slot, EXIT_X[exitDir], EXIT_Y[exitDir]);
+                    store.transition(slot, VehicleState.SALIDO);
+                    trace(TraceWriter.EXIT, store.ids[slot], exitDir, 0);
+                    schedule(500, EV_REMOVE, slot);
+                    break;
+                case EV_REMOVE:
+                    store.release(slot);
+                    activeVehicles--;
+                    crossings++;
+                    if (activeVehicles <= 0 && vehicleCounter >= maxVehicles) {
+                        stopped = true;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Tipo de evento desconocido: " + type);
+            }
+        }
+
+        /**
+         * Equivalente a crossingSemaphore.acquire(): toma un permiso si hay
+         * disponibles o deja al vehículo bloqueado en la cola FIFO.
+         */
+        private void requestPermit(int slot) {
+            requestedAt[slot] = now;
+            phaseStats.record(DIRECTIONS[store.dirs[slot]], PhaseStats.LIGHT_WAIT,
+                    (now - arrivedAt[slot]) * 1_000_000L);
+            if (script != null) {
+                if (slot >= ready.length)
+                    ready = Arrays.copyOf(ready, store.ids.length);
+                ready[slot] = true;
+                readyCount++;
+                admitScripted();
+                maxPermitQueue = Math.max(maxPermitQueue, readyCount);
+            } else if (availablePermits > 0) {
+                availablePermits--;
+                grantPermit(slot);
+            } else {
+                permitQueue.add(slot);
+                maxPermitQueue = Math.max(maxPermitQueue, permitQueue.size());
+            }
+        }
+
+        /**
+         * Concede permisos en el orden grabado: el siguiente vehículo del guion
+         * lo recibe en cuanto tiene luz verde y hay un permiso libre; los que
+         * vienen detrás esperan aunque estén listos. Los que quedan listos sin
+         * permiso son la cola de permisos de la reproducción (maxPermitQueue).
+         */
+        private void admitScripted() {
+            while (availablePermits > 0 && admitIndex < script.acquireCount) {
+                int id = script.acquireOrder[admitIndex];
+                int slot = id < slotById.length && id <= vehicleCounter ? slotById[id] : -1;
+                if (slot < 0 || slot >= ready.length || !ready[slot])
+                    return;
+                ready[slot] = false;
+                readyCount--;
+                admitIndex++;
+                availablePermits--;
+                grantPermit(slot);
+            }
+        }
+
+        /**
+         * Programa el siguiente cambio de luz del guion. Cuando se acaban, el
+         * semáforo sigue con los tiempos de la configuración mientras queden
+         * concesiones grabadas por reproducir.
+         */
+        private void nextScriptedLight() {
+            if (lightIndex < script.lightCount) {
+                int i = lightIndex++;
+                schedule(script.lightTimes[i] - now, EV_SCRIPTED_LIGHT, i);
+            } else if (admitIndex < script.acquireCount) {
+                boolean yellowNext = lightIndex == 0 || script.lightTypes[lightIndex - 1] == TraceWriter.LIGHT_GREEN;
+                if (yellowNext)
+                    schedule(config.getGreenMs(), EV_LIGHT_YELLOW, -1);
+                else
+                    schedule(config.getYellowMs(), EV_LIGHT_SWITCH, -1);
+            }
+        }
+
+        /** Registra la espera del vehículo y programa el fin de su cruce */
+        private void grantPermit(int slot) {
+            waitHistogram.record(now - arrivedAt[slot]);
+            queueChanged(-1);
+            stoppedByDir[store.dirs[slot]]--;
+            store.transition(slot, VehicleState.CRUZANDO);
+            trace(TraceWriter.PERMIT_ACQUIRE, store.ids[slot], store.dirs[slot], availablePermits);
+            Direction dir = DIRECTIONS[store.dirs[slot]];
+            long crossing = moveDuration(CROSS_DISTANCE, store.speeds[slot]);
+            phaseStats.record(dir, PhaseStats.PERMIT_WAIT, (now - requestedAt[slot]) * 1_000_000L);
+            phaseStats.record(dir, PhaseStats.CROSSING, crossing * 1_000_000L);
+            startMotion(slot, crossing);
+            schedule(crossing, EV_CROSSED, slot);
+        }
+
+        /** Graba un evento con el instante simulado actual */
+        private void trace(byte type, int vehicleId, int dir, long value) {
+            if (trace != null)
+                trace.record(now * 1_000_000L, type, vehicleId, dir, value);
+        }
+
+        /** Actualiza la longitud de cola acumulando el área hasta el instante actual */
+        private void queueChanged(int delta) {
+            queueArea += (long) queued * (now - lastQueueChange);
+            lastQueueChange = now;
+            queued += delta;
+            maxQueued = Math.max(maxQueued, queued);
+        }
+
+        /** @return Cola de slots detenidos en rojo para la dirección dada */
+        private IntQueue waitingFor(Direction d) {
+            return d == Direction.NorteSur ? waitingNorteSur : waitingEsteOeste;
+        }
+
+        /**
+         * Duración simulada de Vehicle.moveTo para una distancia dada.
+         * 
+         * @param distance Distancia a recorrer en píxeles
+         * @param speed    Velocidad del vehículo en píxeles por segundo
+         * @return Duración en milisegundos simulados
+         */
+        private static long moveDuration(double distance, double speed) {
+            return Math.round(distance * 1000.0 / speed);
+        }
+
+        /** Programa un evento delayMs milisegundos después del instante actual */
+        private void schedule(long delayMs, int type, int slot) {
+            Event e = eventPool.poll();
+            if (e == null)
+                e = new Event();
+            e.time = now + Math.max(0, delayMs);
+            e.seq = seq++;
+            e.type = type;
+            e.slot = slot;
+            calendar.add(e);
+        }
+
+        /**
+         * Construye el resumen de la ejecución.
+         * 
+         * @param wallNanos Tiempo real que tardó la simulación
+         * @return Texto con tiempo simulado, cruces, esperas y rendimiento
+         */
+        String summary(long wallNanos) {
+            double wallSeconds = Math.max(wallNanos, 1) / 1e9;
+            return String.format(
+                    "Simulación headless completada: %d vehículos, %d cruces, tiempo simulado %.1f s, "
+                            + "espera media %.1f ms, p99 %d ms, máxima %d ms, cola máxima de permisos %d, "
+                            + "%d eventos en %.3f s reales (%.0f cruces/min)",
+                    vehicleCounter, crossings, now / 1000.0, waitHistogram.mean(),
+                    waitHistogram.percentile(99.0), waitHistogram.max(), maxPermitQueue,
+                    eventsProcessed, wallSeconds, crossings / wallSeconds * 60.0);
+        }
+
+        // ==================== RESULTADOS ====================
+
+        /** @return Vehículos que completaron el cruce */
+        long crossings() {
+            return crossings;
+        }
+
+        /** @return Tiempo simulado transcurrido en milisegundos */
+        long simulatedMs() {
+            return now;
+        }
+
+        /** @return Duración simulada de cada fase por dirección (ns) */
+        PhaseStats phaseStats() {
+            return phaseStats;
+        }
+
+        /** @return Histograma de esperas (ms) desde la parada hasta el permiso */
+        LatencyHistogram waitHistogram() {
+            return waitHistogram;
+        }
+
+        /** @return Longitud media (ponderada en el tiempo) de vehículos detenidos */
+        double meanQueueLength() {
+            long area = queueArea + (long) queued * (now - lastQueueChange);
+            return now == 0 ? 0.0 : (double) area / now;
+        }
+
+        /** @return Máximo de vehículos detenidos a la vez */
+        int maxQueueLength() {
+            return maxQueued;
+        }
+
+        /** @return Máximo de vehículos esperando permiso con luz verde */
+        int maxPermitQueue() {
+            return maxPermitQueue;
+        }
+    }
+
+    /**
+     * Calendario de eventos sobre arreglos primitivos: montículo binario
+     * ordenado por tiempo y, a igual tiempo, por una clave de desempate que
+     * elige el llamador.
+     * 
+     * A diferencia del PriorityQueue de DiscreteEventSimulation no crea un
+     * objeto por evento, así que con cientos de miles de eventos pendientes
+     * ni el GC ni los saltos de puntero dominan el tiempo de simulación.
+     * Cada evento lleva un entero de carga que interpreta el llamador.
+     */
+    static final class EventCalendar {
+        private long[] times = new long[64];
+        private long[] ties = new long[64];
+        private int[] payloads = new int[64];
+        private int size = 0;
+
+        /**
+         * Añade un evento.
+         * 
+         * @param time    Instante simulado del evento
+         * @param tie     Clave de desempate entre eventos del mismo instante
+         * @param payload Carga del evento
+         */
+        void add(long time, long tie, int payload) {
+            if (size == times.length) {
+                int cap = size * 2;
+                times = Arrays.copyOf(times, cap);
+                ties = Arrays.copyOf(ties, cap);
+                payloads = Arrays.copyOf(payloads, cap);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(time, tie, times[parent], ties[parent]))
+                    break;
+                times[i] = times[parent];
+                ties[i] = ties[parent];
+                payloads[i] = payloads[parent];
+                i = parent;
+            }
+            times[i] = time;
+            ties[i] = tie;
+            payloads[i] = payload;
+        }
+
+        /** @return Instante del primer evento (el calendario no puede estar vacío) */
+        long peekTime() {
+            return times[0];
+        }
+
+        /**
+         * Quita el primer evento.
+         * 
+         * @return Su carga
+         */
+        int poll() {
+            int top = payloads[0];
+            int last = --size;
+            long time = times[last];
+            long tie = ties[last];
+            int payload = payloads[last];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= last)
+                    break;
+                if (child + 1 < last && before(times[child + 1], ties[child + 1], times[child], ties[child]))
+                    child++;
+                if (!before(times[child], ties[child], time, tie))
+                    break;
+                times[i] = times[child];
+                ties[i] = ties[child];
+                payloads[i] = payloads[child];
+                i = child;
+            }
+            times[i] = time;
+            ties[i] = tie;
+            payloads[i] = payload;
+            return top;
+        }
+
+        /** @return Eventos pendientes */
+        int size() {
+            return size;
+        }
+
+        private static boolean before(long timeA, long tieA, long timeB, long tieB) {
+            return timeA != timeB ? timeA < timeB : tieA < tieB;
+        }
+    }
+
+    /**
+     * Red de R x C cruces simulada con eventos discretos (solo headless).
+     * 
+     * Las calles verticales van de norte a sur (NorteSur) y las horizontales
+     * de oeste a este (EsteOeste), igual que en el cruce único. Cada cruce
+     * tiene su propio ciclo verde/amarillo y su propio número de permisos
+     * (permits); cada tramo entre dos cruces admite como mucho
+     * segment-capacity vehículos, contando los que están detenidos en la
+     * línea de parada.
+     * 
+     * Los vehículos entran por el borde norte o el oeste, eligen un punto de
+     * salida alcanzable en el borde sur o el este y en cada cruce siguen recto
+     * o giran según su propio flujo aleatorio (RandomStreams), de modo que la
+     * ruta depende solo de la semilla y del id. Un vehículo con luz verde y
+     * permiso libre solo cruza si hay hueco en el tramo siguiente; si no,
+     * espera y bloquea a los de detrás (la cola se propaga hacia atrás). Como
+     * todos los tramos van hacia el sur o el este no hay ciclos y la red no
+     * puede quedar bloqueada.
+     * 
+     * Ejecución en paralelo: la red se divide en regiones de filas
+     * consecutivas, cada una con su propio calendario y sus propios
+     * vehículos, y todas avanzan en ventanas de SYNC_MS milisegundos
+     * simulados repartidas en un ForkJoinPool de workers hilos. Entre dos
+     * regiones solo hay dos mensajes, ambos en buzones acotados con doble
+     * buffer:
+     * - Handoff: un vehículo que entra en un tramo de la región de abajo.
+     *   Tarda al menos MIN_BLOCK_MS en llegar a la línea de parada, más que
+     *   una ventana, así que la región destino lo recibe a tiempo.
+     * - Crédito: el hueco que deja en un tramo frontera el vehículo que lo
+     *   abandona, devuelto a la región de arriba, que es quien lo reserva.
+     * 
+     * Los huecos de todos los tramos (no solo los de frontera) se devuelven
+     * al empezar la ventana siguiente y los empates se deciden por el id del
+     * vehículo, del cruce o de la entrada, así que el resultado es el mismo
+     * con cualquier número de hilos y de regiones.
+     * 
+     * Cada cruce decide su verde con el SignalController de la configuración
+     * y unos sensores propios. Con max-pressure la presión de una fase suma,
+     * por cada movimiento (entrada -> salida), los detenidos en la entrada que
+     * van a esa salida menos la ocupación del tramo de salida. Ambos datos
+     * son contadores que mantiene la región del cruce (turning y room), así
+     * que la decisión es O(1) y no depende de los hilos.
+     * 
+     * Todo el estado vive en arreglos indexados por cruce, tramo o slot de
+     * vehículo, y los eventos en un EventCalendar por región, para escalar a
+     * miles de cruces y cientos de miles de vehículos.
+     */
+    static final class GridSimulation {
+        /** Fin del verde en un cruce (carga = cruce) */
+        private static final int EV_LIGHT_YELLOW = 0;
+        /** Fin del amarillo en un cruce (carga = cruce) */
+        private static final int EV_LIGHT_SWITCH = 1;
+        /** Nuevo vehículo en una entrada (carga = entrada) */
+        private static final int EV_SPAWN = 2;
+        /** El vehículo llega a la línea de parada de su cruce (carga = slot) */
+        private static final int EV_ARRIVE = 3;
+        /** El vehículo termina de atravesar su cruce (carga = slot) */
+        private static final int EV_CROSSED = 4;
+        private static final int TYPE_BITS = 3;
+
+        /** Distancia entre la salida de un cruce y la línea de parada del siguiente */
+        private static final double BLOCK_DISTANCE = 270.0;
+        /** Distancia para atravesar un cruce */
+        private static final double JUNCTION_DISTANCE = 80.0;
+        /** Recorrido más rápido de un tramo (sampleSpeed no supera 120 px/s) */
+        private static final long MIN_BLOCK_MS = DiscreteEventSimulation.moveDuration(BLOCK_DISTANCE,
+                sampleSpeed(0.0));
+        /**
+         * Ventana de sincronización entre regiones. Es menor que MIN_BLOCK_MS,
+         * así que un vehículo que pasa a otra región nunca llega antes de que
+         * esta lo reciba.
+         */
+        static final long SYNC_MS = MIN_BLOCK_MS / 4;
+        /** Regiones por hilo, para repartir la carga entre zonas con más y menos tráfico */
+        private static final int REGIONS_PER_WORKER = 4;
+
+        private static final byte SOUTH = (byte) Direction.NorteSur.ordinal();
+        private static final byte EAST = (byte) Direction.EsteOeste.ordinal();
+
+        private final SimulationConfig config;
+        private final int rows;
+        private final int cols;
+        private final int maxVehicles;
+        private final int segmentCapacity;
+        private final long seed;
+        private final int workers;
+        /** Decide cuánto dura cada verde; sin estado, lo comparten todas las regiones */
+        private final SignalController controller;
+
+        // Por cruce (índice r * cols + c); los escribe la región del cruce
+        /** Dirección con verde */
+        private final byte[] green;
+        /** Instante en que empezó el verde actual */
+        private final long[] greenStart;
+        /** Permisos libres */
+        private final int[] permits;
+
+        // Por tramo de entrada a un cruce (índice cruce * 2 + dirección)
+        /** Huecos libres; los reserva y los recupera la región del cruce de origen */
+        private final int[] room;
+        /** Slots detenidos en la línea de parada (FIFO), de la región del cruce de destino */
+        private final IntQueue[] stopLine;
+        /** Detenidos en la línea de parada según su salida (índice tramo * 2 + salida) */
+        private final int[] turning;
+        /** Última llegada a la línea de parada (-1 si nunca) */
+        private final long[] lastArrival;
+
+        // Por entrada (0..cols-1 borde norte, cols..cols+rows-1 borde oeste)
+        /** Vehículos generados que aún no caben en el tramo de entrada */
+        private final IntQueue[] backlog;
+        /** Flujo de intervalos de cada entrada */
+        private final Random[] spawners;
+        /** Vehículos ya generados por cada entrada */
+        private final int[] spawned;
+
+        /** Regiones de filas consecutivas, de norte a sur */
+        private final Region[] regions;
+        /** Región de cada fila */
+        private final int[] regionOfRow;
+
+        /** Fin de la ventana en curso y número de ventana (para el doble buffer) */
+        private long windowEnd = 0;
+        private long window = 0;
+
+        /**
+         * Los tiempos de semáforo y de generación se leen de la configuración
+         * cada vez que se programan; el resto se fija al crear el motor.
+         * 
+         * @param config Configuración (grid, permits, segment-capacity, vehicles, seed, workers)
+         */
+        GridSimulation(SimulationConfig config) {
+            this.config = config;
+            this.rows = config.getGridRows();
+            this.cols = config.getGridCols();
+            this.maxVehicles = config.getMaxVehicles();
+            this.segmentCapacity = config.getSegmentCapacity();
+            this.seed = config.getSeed();
+            this.workers = config.getWorkers();
+            this.controller = SignalController.create(config);
+            int junctions = rows * cols;
+            green = new byte[junctions];
+            greenStart = new long[junctions];
+            permits = new int[junctions];
+            Arrays.fill(permits, config.getPermits());
+            room = new int[junctions * 2];
+            Arrays.fill(room, segmentCapacity);
+            stopLine = new IntQueue[junctions * 2];
+            for (int i = 0; i < stopLine.length; i++)
+                stopLine[i] = new IntQueue();
+            turning = new int[junctions * 4];
+            lastArrival = new long[junctions * 2];
+            Arrays.fill(lastArrival, -1);
+            int entries = cols + rows;
+            backlog = new IntQueue[entries];
+            spawners = new Random[entries];
+            spawned = new int[entries];
+            for (int e = 0; e < entries; e++) {
+                backlog[e] = new IntQueue();
+                spawners[e] = RandomStreams.spawner(seed, e);
+            }
+
+            regions = new Region[Math.min(rows, workers * REGIONS_PER_WORKER)];
+            regionOfRow = new int[rows];
+            for (int k = 0; k < regions.length; k++) {
+                int first = (int) ((long) k * rows / regions.length);
+                int end = (int) ((long) (k + 1) * rows / regions.length);
+                Arrays.fill(regionOfRow, first, end, k);
+                regions[k] = new Region(k, first, end);
+            }
+        }
+
+        /**
+         * Ejecuta la simulación hasta que todos los vehículos salen de la red.
+         * Todos los cruces empiezan con verde para NorteSur.
+         * 
+         * @throws InterruptedException si se interrumpe la espera de las regiones
+         */
+        void run() throws InterruptedException {
+            if (maxVehicles == 0)
+                return;
+            for (Region r : regions)
+                r.init();
+
+            ForkJoinPool pool = workers > 1 ? new ForkJoinPool(workers) : null;
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Region r : regions) {
+                tasks.add(() -> {
+                    r.step();
+                    return null;
+                });
+            }
+            try {
+                while (exited() < maxVehicles) {
+                    windowEnd += SYNC_MS;
+                    if (pool == null) {
+                        for (Region r : regions)
+                            r.step();
+                    } else {
+                        for (Future<Void> f : pool.invokeAll(tasks))
+                            f.get(); // invokeAll hace de barrera entre ventanas
+                    }
+                    window++;
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Falló una región de la red", e.getCause());
+            } finally {
+                if (pool != null)
+                    pool.shutdown();
+            }
+        }
+
+        /**
+         * Siguiente dirección de la ruta: recto o giro hacia el destino, con
+         * probabilidad proporcional a los cruces que quedan en cada sentido
+         * (todas las rutas mínimas son igual de probables).
+         */
+        private byte route(int id, int j, int destination, byte exitHeading, int hops) {
+            int south = destination / cols - j / cols;
+            int east = destination % cols - j % cols;
+            if (south == 0 && east == 0)
+                return exitHeading;
+            if (south == 0)
+                return EAST;
+            if (east == 0)
+                return SOUTH;
+            double u = RandomStreams.uniform(seed, id, RandomStreams.DRAW_ROUTE + 1 + hops);
+            return u * (south + east) < south ? SOUTH : EAST;
+        }
+
+        /**
+         * Tramo en el que entra un vehículo al salir de un cruce.
+         * 
+         * @return Índice del tramo, o -1 si sale de la red
+         */
+        private int nextLink(int j, byte dir) {
+            if (dir == SOUTH)
+                return j / cols + 1 < rows ? (j + cols) * 2 + SOUTH : -1;
+            return j % cols + 1 < cols ? (j + 1) * 2 + EAST : -1;
+        }
+
+        /**
+         * Cruce desde el que se entra a un tramo.
+         * 
+         * @return Índice del cruce, o -1 si el tramo empieza en el borde
+         */
+        private int upstream(int link) {
+            int j = link >> 1;
+            if ((link & 1) == SOUTH)
+                return j >= cols ? j - cols : -1;
+            return j % cols > 0 ? j - 1 : -1;
+        }
+
+        /** @return Entrada de un tramo que empieza en el borde */
+        private int entryOf(int link) {
+            int j = link >> 1;
+            return (link & 1) == SOUTH ? j % cols : cols + j / cols;
+        }
+
+        /** @return Clave de desempate: primero por tipo, después por cruce, entrada o id */
+        private static long tie(int type, int identity) {
+            return (long) type << 40 | identity;
+        }
+
+        /**
+         * Una región de filas consecutivas. Solo su hilo toca sus vehículos,
+         * su calendario y el estado de sus cruces y tramos; lo demás le llega
+         * por los buzones de sus vecinas al empezar cada ventana.
+         */
+        private final class Region {
+            private final int firstRow;
+            private final int endRow;
+            private final EventCalendar calendar = new EventCalendar();
+            /** Vehículos que entran en la región de abajo (null en la última) */
+            private final Handoff toNext;
+            /** Huecos de tramos frontera devueltos a la región de arriba (null en la primera) */
+            private final Credits toPrevious;
+            /** Tramos cuyo hueco se devuelve a esta misma región en la próxima ventana */
+            private final IntQueue released = new IntQueue();
+            /** Cruces y entradas a revisar tras devolver los huecos */
+            private final IntQueue touched = new IntQueue();
+            private final int index;
+            /** Sensores del cruce que está decidiendo su verde */
+            private final JunctionSensors sensors = new JunctionSensors();
+
+            // Por slot de vehículo
+            private int[] ids = new int[1024];
+            private int[] junction = new int[1024];
+            private byte[] heading = new byte[1024];
+            /** Dirección con la que saldrá del cruce actual */
+            private byte[] nextHeading = new byte[1024];
+            /** Último cruce de la ruta */
+            private int[] destination = new int[1024];
+            /** Dirección con la que abandona la red en el último cruce */
+            private byte[] exitHeading = new byte[1024];
+            /** Cruces ya atravesados */
+            private int[] hops = new int[1024];
+            private float[] speeds = new float[1024];
+            private long[] spawnedAt = new long[1024];
+            private long[] arrivedAt = new long[1024];
+            private int[] freeSlots = new int[1024];
+            private int freeCount = 0;
+            private int highWater = 0;
+
+            private long now = 0;
+
+            // Estadísticas
+            private long eventsProcessed = 0;
+            private long exited = 0;
+            private long lastExit = 0;
+            private long junctionCrossings = 0;
+            /** Veces que un vehículo con verde y permiso no pudo cruzar por tramo lleno */
+            private long spillbacks = 0;
+            private int maxBacklog = 0;
+            /** Espera en cada línea de parada hasta cruzar (ms) */
+            private final LatencyHistogram waitHistogram = new LatencyHistogram();
+            /** Tiempo total en la red, desde la generación hasta la salida (ms) */
+            private final LatencyHistogram travelHistogram = new LatencyHistogram();
+
+            Region(int index, int firstRow, int endRow) {
+                this.index = index;
+                this.firstRow = firstRow;
+                this.endRow = endRow;
+                // En una ventana cada tramo frontera recibe o libera como mucho segmentCapacity vehículos
+                this.toNext = endRow < rows ? new Handoff(cols * segmentCapacity) : null;
+                this.toPrevious = firstRow > 0 ? new Credits(cols * segmentCapacity) : null;
+            }
+
+            /** Programa los semáforos de sus cruces y la primera llegada de sus entradas */
+            void init() {
+                for (int j = firstRow * cols; j < endRow * cols; j++)
+                    schedule(holdGreen(j), EV_LIGHT_YELLOW, j, j);
+                for (int e = 0; e < cols + rows; e++) {
+                    int row = e < cols ? 0 : e - cols;
+                    if (row >= firstRow && row < endRow && quota(e) > 0)
+                        schedule(config.nextSpawnDelay(spawners[e]), EV_SPAWN, e, e);
+                }
+            }
+
+            /**
+             * Avanza una ventana: recibe los vehículos y huecos de la ventana
+             * anterior y procesa los eventos anteriores a windowEnd.
+             */
+            void step() {
+                int previous = (int) (window & 1) ^ 1;
+                now = windowEnd - SYNC_MS;
+                if (index > 0)
+                    receive(regions[index - 1].toNext, previous);
+
+                // Primero se devuelven todos los huecos y después se revisan los
+                // cruces afectados, para que el orden de llegada no importe
+                int link;
+                while ((link = released.poll()) >= 0)
+                    free(link);
+                if (index + 1 < regions.length) {
+                    Credits credits = regions[index + 1].toPrevious;
+                    for (int i = 0; i < credits.count[previous]; i++)
+                        free(credits.links[previous * credits.capacity + i]);
+                    credits.count[previous] = 0;
+                }
+                int t;
+                while ((t = touched.poll()) >= 0) {
+                    if (t < rows * cols)
+                        admit(t);
+                    else
+                        admitEntry(t - rows * cols);
+                }
+
+                while (calendar.size() > 0 && calendar.peekTime() < windowEnd) {
+                    now = calendar.peekTime();
+                    int payload = calendar.poll();
+                    eventsProcessed++;
+                    dispatch(payload & ((1 << TYPE_BITS) - 1), payload >>> TYPE_BITS);
+                }
+            }
+
+            /** Devuelve un hueco y apunta qué cruce o entrada puede aprovecharlo */
+            private void free(int link) {
+                room[link]++;
+                int up = upstream(link);
+                touched.add(up >= 0 ? up : rows * cols + link);
+            }
+
+            /** Da de alta los vehículos que la región de arriba dejó en el buzón */
+            private void receive(Handoff h, int parity) {
+                for (int i = 0; i < h.count[parity]; i++) {
+                    int k = parity * h.capacity + i;
+                    int slot = allocate();
+                    ids[slot] = h.ids[k];
+                    junction[slot] = h.junctions[k];
+                    heading[slot] = SOUTH;
+                    destination[slot] = h.destinations[k];
+                    exitHeading[slot] = h.exitHeadings[k];
+                    hops[slot] = h.hops[k];
+                    speeds[slot] = h.speeds[k];
+                    spawnedAt[slot] = h.spawnedAt[k];
+                    calendar.add(h.arriveAt[k], tie(EV_ARRIVE, ids[slot]), slot << TYPE_BITS | EV_ARRIVE);
+                }
+                h.count[parity] = 0;
+            }
+
+            /**
+             * Ejecuta la acción asociada a un tipo de evento.
+             * 
+             * @param type   Tipo de evento (EV_*)
+             * @param target Cruce, entrada o slot según el tipo
+             */
+            private void dispatch(int type, int target) {
+                switch (type) {
+                    case EV_LIGHT_YELLOW:
+                        long hold = holdGreen(target);
+                        if (hold > 0)
+                            schedule(hold, EV_LIGHT_YELLOW, target, target);
+                        else
+                            schedule(config.getYellowMs(), EV_LIGHT_SWITCH, target, target);
+                        break;
+                    case EV_LIGHT_SWITCH:
+                        green[target] = green[target] == SOUTH ? EAST : SOUTH;
+                        greenStart[target] = now;
+                        schedule(holdGreen(target), EV_LIGHT_YELLOW, target, target);
+                        admit(target);
+                        break;
+                    case EV_SPAWN:
+                        spawn(target);
+                        if (spawned[target] < quota(target))
+                            schedule(config.nextSpawnDelay(spawners[target]), EV_SPAWN, target, target);
+                        break;
+                    case EV_ARRIVE:
+                        arrive(target);
+                        break;
+                    case EV_CROSSED:
+                        crossed(target);
+                        break;
+                    default:
+                        throw new IllegalStateException("Tipo de evento desconocido: " + type);
+                }
+            }
+
+            /**
+             * Crea un vehículo en una entrada con un destino alcanzable elegido
+             * al azar entre las salidas del borde sur y del borde este. Los ids
+             * se reparten entre entradas (e + 1, e + 1 + E, ...) para que no
+             * dependan del orden en que se procesan las regiones.
+             */
+            private void spawn(int entry) {
+                int entries = cols + rows;
+                int id = spawned[entry]++ * entries + entry + 1;
+                int slot = allocate();
+                int r0 = entry < cols ? 0 : entry - cols;
+                int c0 = entry < cols ? entry : 0;
+                int southExits = cols - c0;
+                int k = (int) (RandomStreams.uniform(seed, id, RandomStreams.DRAW_ROUTE) * (southExits + rows - r0));
+                if (k < southExits) {
+                    destination[slot] = (rows - 1) * cols + c0 + k;
+                    exitHeading[slot] = SOUTH;
+                } else {
+                    destination[slot] = (r0 + k - southExits) * cols + cols - 1;
+                    exitHeading[slot] = EAST;
+                }
+                ids[slot] = id;
+                junction[slot] = r0 * cols + c0;
+                heading[slot] = entry < cols ? SOUTH : EAST;
+                hops[slot] = 0;
+                speeds[slot] = (float) sampleSpeed(RandomStreams.uniform(seed, id, RandomStreams.DRAW_SPEED));
+                spawnedAt[slot] = now;
+
+                int link = junction[slot] * 2 + heading[slot];
+                if (room[link] > 0) {
+                    enter(slot, link);
+                } else {
+                    backlog[entry].add(slot);
+                    maxBacklog = Math.max(maxBacklog, backlog[entry].size());
+                }
+            }
+
+            /** Ocupa el tramo y programa la llegada a su línea de parada */
+            private void enter(int slot, int link) {
+                room[link]--;
+                schedule(DiscreteEventSimulation.moveDuration(BLOCK_DISTANCE, speeds[slot]), EV_ARRIVE, slot,
+                        ids[slot]);
+            }
+
+            /** El vehículo se detiene en la línea de parada y decide por dónde sigue */
+            private void arrive(int slot) {
+                int j = junction[slot];
+                nextHeading[slot] = route(ids[slot], j, destination[slot], exitHeading[slot], hops[slot]);
+                arrivedAt[slot] = now;
+                int link = j * 2 + heading[slot];
+                stopLine[link].add(slot);
+                turning[link * 2 + nextHeading[slot]]++;
+                lastArrival[link] = now;
+                if (green[j] == heading[slot])
+                    admit(j);
+            }
+
+            /**
+             * Equivalente a crossingSemaphore.acquire() en un cruce: mientras
+             * haya permisos, el primero de la cola con verde cruza si cabe en su
+             * tramo siguiente; si no cabe, él y los de detrás siguen esperando.
+             */
+            private void admit(int j) {
+                int link = j * 2 + green[j];
+                IntQueue queue = stopLine[link];
+                while (permits[j] > 0 && queue.size() > 0) {
+                    int slot = queue.peek();
+                    int next = nextLink(j, nextHeading[slot]);
+                    if (next >= 0 && room[next] == 0) {
+                        spillbacks++;
+                        return;
+                    }
+                    queue.poll();
+                    turning[link * 2 + nextHeading[slot]]--;
+                    permits[j]--;
+                    if (next >= 0)
+                        room[next]--; // Reserva el hueco antes de entrar en el cruce
+                    waitHistogram.record(now - arrivedAt[slot]);
+                    junctionCrossings++;
+                    schedule(DiscreteEventSimulation.moveDuration(JUNCTION_DISTANCE, speeds[slot]), EV_CROSSED,
+                            slot, ids[slot]);
+                }
+            }
+
+            /**
+             * El vehículo deja el cruce: libera el permiso, devuelve su hueco en
+             * el tramo anterior en la próxima ventana y sigue por el tramo
+             * reservado (en esta región o en la de abajo) o sale de la red.
+             */
+            private void crossed(int slot) {
+                int j = junction[slot];
+                int link = j * 2 + heading[slot];
+                byte out = nextHeading[slot];
+                permits[j]++;
+                hops[slot]++;
+                if (heading[slot] == SOUTH && j / cols == firstRow && firstRow > 0)
+                    toPrevious.add((int) (window & 1), link);
+                else
+                    released.add(link);
+
+                int next = nextLink(j, out);
+                if (next < 0) {
+                    travelHistogram.record(now - spawnedAt[slot]);
+                    exited++;
+                    lastExit = now;
+                    freeSlots[freeCount++] = slot;
+                } else {
+                    long arriveAt = now + DiscreteEventSimulation.moveDuration(BLOCK_DISTANCE, speeds[slot]);
+                    if ((next >> 1) / cols >= endRow) {
+                        toNext.add((int) (window & 1), ids[slot], next >> 1, destination[slot], exitHeading[slot],
+                                hops[slot], speeds[slot], spawnedAt[slot], arriveAt);
+                        freeSlots[freeCount++] = slot;
+                    } else {
+                        junction[slot] = next >> 1;
+                        heading[slot] = out;
+                        calendar.add(arriveAt, tie(EV_ARRIVE, ids[slot]), slot << TYPE_BITS | EV_ARRIVE);
+                    }
+                }
+                admit(j);
+            }
+
+            /** Deja pasar a la red a los vehículos que esperan en la entrada de un tramo de borde */
+            private void admitEntry(int link) {
+                IntQueue queue = backlog[entryOf(link)];
+                while (queue.size() > 0 && room[link] > 0) {
+                    enter(queue.poll(), link);
+                }
+            }
+
+            /** @return Vehículos que genera en total una entrada */
+            private int quota(int entry) {
+                int entries = cols + rows;
+                return maxVehicles / entries + (entry < maxVehicles % entries ? 1 : 0);
+            }
+
+            /** @return Slot libre (las columnas crecen al doble si hace falta) */
+            private int allocate() {
+                if (freeCount > 0)
+                    return freeSlots[--freeCount];
+                if (highWater == ids.length) {
+                    int cap = ids.length * 2;
+                    ids = Arrays.copyOf(ids, cap);
+                    junction = Arrays.copyOf(junction, cap);
+                    heading = Arrays.copyOf(heading, cap);
+                    nextHeading = Arrays.copyOf(nextHeading, cap);
+                    destination = Arrays.copyOf(destination, cap);
+                    exitHeading = Arrays.copyOf(exitHeading, cap);
+                    hops = Arrays.copyOf(hops, cap);
+                    speeds = Arrays.copyOf(speeds, cap);
+                    spawnedAt = Arrays.copyOf(spawnedAt, cap);
+                    arrivedAt = Arrays.copyOf(arrivedAt, cap);
+                    freeSlots = Arrays.copyOf(freeSlots, cap);
+                }
+                return highWater++;
+            }
+
+            /** Programa un evento delayMs milisegundos después del instante actual */
+            private void schedule(long delayMs, int type, int target, int identity) {
+                calendar.add(now + Math.max(0, delayMs), tie(type, identity), target << TYPE_BITS | type);
+            }
+
+            /** @return Cuánto más dura el verde del cruce j según el controlador */
+            private long holdGreen(int j) {
+                sensors.junction = j;
+                return controller.holdGreen(DIRECTIONS[green[j]], now - greenStart[j], sensors);
+            }
+
+            /**
+             * Sensores de un cruce. Solo leen contadores de la propia región:
+             * la cola y los giros de sus tramos de entrada y los huecos de sus
+             * tramos de salida, que reserva este mismo cruce.
+             */
+            private final class JunctionSensors implements QueueSensors {
+                int junction;
+
+                @Override
+                public int queued(Direction d) {
+                    return stopLine[junction * 2 + d.ordinal()].size();
+                }
+
+                @Override
+                public long sinceArrivalMs(Direction d) {
+                    long t = lastArrival[junction * 2 + d.ordinal()];
+                    return t < 0 ? Long.MAX_VALUE : now - t;
+                }
+
+                @Override
+                public int pressure(Direction d) {
+                    int link = junction * 2 + d.ordinal();
+                    int pressure = 0;
+                    for (int out = 0; out < 2; out++) {
+                        int next = nextLink(junction, (byte) out);
+                        pressure += turning[link * 2 + out] - (next >= 0 ? segmentCapacity - room[next] : 0);
+                    }
+                    return pressure;
+                }
+            }
+        }
+
+        /**
+         * Buzón acotado de vehículos hacia la región de abajo. Tiene dos mitades
+         * (por la paridad de la ventana): una región escribe en la de la ventana
+         * actual mientras la de abajo vacía la de la anterior.
+         */
+        private static final class Handoff {
+            final int capacity;
+            final int[] count = new int[2];
+            final int[] ids;
+            final int[] junctions;
+            final int[] destinations;
+            final byte[] exitHeadings;
+            final int[] hops;
+            final float[] speeds;
+            final long[] spawnedAt;
+            final long[] arriveAt;
+
+            Handoff(int capacity) {
+                this.capacity = capacity;
+                ids = new int[2 * capacity];
+                junctions = new int[2 * capacity];
+                destinations = new int[2 * capacity];
+                exitHeadings = new byte[2 * capacity];
+                hops = new int[2 * capacity];
+                speeds = new float[2 * capacity];
+                spawnedAt = new long[2 * capacity];
+                arriveAt = new long[2 * capacity];
+            }
+
+            void add(int parity, int id, int junction, int destination, byte exitHeading, int hops, float speed,
+                    long spawnedAt, long arriveAt) {
+                if (count[parity] == capacity)
+                    throw new IllegalStateException("Buzón de vehículos entre regiones lleno");
+                int k = parity * capacity + count[parity]++;
+                this.ids[k] = id;
+                this.junctions[k] = junction;
+                this.destinations[k] = destination;
+                this.exitHeadings[k] = exitHeading;
+                this.hops[k] = hops;
+                this.speeds[k] = speed;
+                this.spawnedAt[k] = spawnedAt;
+                this.arriveAt[k] = arriveAt;
+            }
+        }
+
+        /** Buzón acotado de huecos devueltos a la región de arriba, con doble buffer como Handoff */
+        private static final class Credits {
+            final int capacity;
+            final int[] count = new int[2];
+            final int[] links;
+
+            Credits(int capacity) {
+                this.capacity = capacity;
+                links = new int[2 * capacity];
+            }
+
+            void add(int parity, int link) {
+                if (count[parity] == capacity)
+                    throw new IllegalStateException("Buzón de huecos entre regiones lleno");
+                links[parity * capacity + count[parity]++] = link;
+            }
+        }
+
+        /**
+         * Construye el resumen de la ejecución.
+         * 
+         * @param wallNanos Tiempo real que tardó la simulación
+         * @return Texto con viajes, esperas, bloqueos y rendimiento
+         */
+        String summary(long wallNanos) {
+            double wallSeconds = Math.max(wallNanos, 1) / 1e9;
+            long crossings = 0;
+            long spillbacks = 0;
+            long events = 0;
+            int maxBacklog = 0;
+            for (Region r : regions) {
+                crossings += r.junctionCrossings;
+                spillbacks += r.spillbacks;
+                events += r.eventsProcessed;
+                maxBacklog = Math.max(maxBacklog, r.maxBacklog);
+            }
+            LatencyHistogram waits = waitHistogram();
+            LatencyHistogram travel = travelHistogram();
+            long exited = exited();
+            return String.format(
+                    "Red %dx%d completada (%d regiones, %d hilos): %d vehículos, %d pasos por cruce "
+                            + "(%.2f por vehículo), tiempo simulado %.1f s, viaje medio %.1f s (p99 %.1f s), "
+                            + "espera media por cruce %.1f ms (p99 %d ms), %d bloqueos por tramo lleno, "
+                            + "cola máxima en una entrada %d, %d eventos en %.3f s reales (%.2f M eventos/s)",
+                    rows, cols, regions.length, workers, exited, crossings,
+                    exited == 0 ? 0.0 : (double) crossings / exited, simulatedMs() / 1000.0, travel.mean() / 1000.0,
+                    travel.percentile(99.0) / 1000.0, waits.mean(), waits.percentile(99.0), spillbacks, maxBacklog,
+                    events, wallSeconds, events / wallSeconds / 1e6);
+        }
+
+        // ==================== RESULTADOS ====================
+
+        /** @return Vehículos que salieron de la red */
+        long exited() {
+            long n = 0;
+            for (Region r : regions)
+                n += r.exited;
+            return n;
+        }
+
+        /** @return Tiempo simulado hasta la última salida, en milisegundos */
+        long simulatedMs() {
+            long t = 0;
+            for (Region r : regions)
+                t = Math.max(t, r.lastExit);
+            return t;
+        }
+
+        /** @return Histograma de esperas (ms) en las líneas de parada */
+        LatencyHistogram waitHistogram() {
+            LatencyHistogram h = new LatencyHistogram();
+            for (Region r : regions)
+                h.merge(r.waitHistogram);
+            return h;
+        }
+
+        /** @return Histograma de tiempos de viaje (ms) por la red */
+        LatencyHistogram travelHistogram() {
+            LatencyHistogram h = new LatencyHistogram();
+            for (Region r : regions)
+                h.merge(r.travelHistogram);
+            return h;
+        }
+    }
+
+    /**
+     * Movimientos de un cruce de cuatro accesos y su matriz de conflictos.
+     * 
+     * Un movimiento es acceso * 3 + giro, con los accesos N, E, S, O (lado por
+     * el que entra el vehículo) y los giros recto, izquierda y derecha. La
+     * matriz se calcula una sola vez a partir de la geometría: alrededor del
+     * cruce, en sentido horario, cada lado tiene su carril de entrada y
+     * después el de salida (circulación por la derecha); dos trayectorias
+     * chocan si sus cuerdas se cruzan o si terminan en el mismo carril de
+     * salida. Las que salen del mismo acceso van por carriles distintos y no
+     * chocan. Así N recto y S recto son compatibles, N izquierda choca con
+     * S recto y N derecha solo choca con quien sale hacia el oeste.
+     */
+    static final class ConflictMatrix {
+        static final int APPROACHES = 4;
+        static final int STRAIGHT = 0;
+        static final int LEFT = 1;
+        static final int RIGHT = 2;
+        /** Número de movimientos */
+        static final int COUNT = APPROACHES * 3;
+
+        private static final String[] APPROACH_NAMES = { "N", "E", "S", "O" };
+        private static final String[] TURN_NAMES = { "recto", "izquierda", "derecha" };
+
+        /** Bit j de CONFLICTS[i]: los movimientos i y j no pueden estar a la vez en el cruce */
+        private static final int[] CONFLICTS = new int[COUNT];
+
+        static {
+            for (int a = 0; a < COUNT; a++) {
+                for (int b = 0; b < COUNT; b++) {
+                    if (a / 3 != b / 3 && conflict(a, b))
+                        CONFLICTS[a] |= 1 << b;
+                }
+            }
+        }
+
+        private ConflictMatrix() {
+        }
+
+        /**
+         * @param approach Acceso (0 N, 1 E, 2 S, 3 O)
+         * @param turn     STRAIGHT, LEFT o RIGHT
+         * @return Movimiento
+         */
+        static int movement(int approach, int turn) {
+            return approach * 3 + turn;
+        }
+
+        /** @return Lado por el que sale el movimiento */
+        static int exitSide(int movement) {
+            int approach = movement / 3;
+            switch (movement % 3) {
+                case LEFT:
+                    return (approach + 1) % APPROACHES;
+                case RIGHT:
+                    return (approach + 3) % APPROACHES;
+                default:
+                    return (approach + 2) % APPROACHES;
+            }
+        }
+
+        /** @return Máscara de los movimientos que chocan con el dado */
+        static int conflicts(int movement) {
+            return CONFLICTS[movement];
+        }
+
+        /** @return Dirección equivalente del modelo de dos direcciones (N y S son NorteSur) */
+        static Direction direction(int movement) {
+            return movement / 3 % 2 == 0 ? Direction.NorteSur : Direction.EsteOeste;
+        }
+
+        /** @return Nombre legible, por ejemplo "N izquierda" */
+        static String name(int movement) {
+            return APPROACH_NAMES[movement / 3] + " " + TURN_NAMES[movement % 3];
+        }
+
+        /**
+         * Posiciones alrededor del cruce en sentido horario: la entrada del
+         * lado s es 2s y su salida 2s + 1.
+         */
+        private static boolean conflict(int a, int b) {
+            int a0 = 2 * (a / 3);
+            int a1 = 2 * exitSide(a) + 1;
+            int b0 = 2 * (b / 3);
+            int b1 = 2 * exitSide(b) + 1;
+            if (a1 == b1)
+                return true; // Confluyen en el mismo carril de salida
+            return between(a0, a1, b0) != between(a0, a1, b1);
+        }
+
+        /** @return true si p está estrictamente dentro del arco horario de from a to */
+        private static boolean between(int from, int to, int p) {
+            int span = (to - from + 8) % 8;
+            int offset = (p - from + 8) % 8;
+            return offset > 0 && offset < span;
+        }
+    }
+
+    /**
+     * Control de admisión al cruce de cuatro accesos con la matriz de
+     * conflictos: un vehículo entra si ningún movimiento que choca con el
+     * suyo está dentro del cruce (una comprobación de máscara de bits) y su
+     * propio movimiento tiene menos de permits vehículos dentro.
+     * 
+     * Sustituye a crossingSemaphore, que limita el total sin mirar las
+     * trayectorias: aquí los movimientos compatibles cruzan a la vez y cada
+     * uno tiene su propio cupo. Solo se usa desde el hilo del motor.
+     */
+    static final class ConflictAdmission {
+        private final int[] inside = new int[ConflictMatrix.COUNT];
+        /** Bit m: hay al menos un vehículo del movimiento m dentro del cruce */
+        private int activeMask = 0;
+        private final int permits;
+        private int total = 0;
+
+        /** @param permits Vehículos de un mismo movimiento dentro del cruce a la vez */
+        ConflictAdmission(int permits) {
+            this.permits = permits;
+        }
+
+        /**
+         * Equivalente a tryAcquire() para un movimiento.
+         * 
+         * @param movement Movimiento del vehículo
+         * @return true si puede entrar en el cruce (y queda dentro)
+         */
+        boolean tryAcquire(int movement) {
+            if ((ConflictMatrix.conflicts(movement) & activeMask) != 0 || inside[movement] >= permits)
+                return false;
+            inside[movement]++;
+            activeMask |= 1 << movement;
+            total++;
+            return true;
+        }
+
+        /** @param movement Movimiento del vehículo que deja el cruce */
+        void release(int movement) {
+            if (--inside[movement] == 0)
+                activeMask &= ~(1 << movement);
+            total--;
+        }
+
+        /** @return Vehículos dentro del cruce */
+        int total() {
+            return total;
+        }
+
+        /** @return Máscara de los movimientos con algún vehículo dentro del cruce */
+        int activeMask() {
+            return activeMask;
+        }
+    }
+
+    /**
+     * Cruce de cuatro accesos con giros, simulado con eventos discretos
+     * (solo headless).
+     * 
+     * Los vehículos llegan por N, E, S u O y siguen recto (60%), giran a la
+     * izquierda (20%) o a la derecha (20%), cada uno por su carril con su
+     * propia cola FIFO. El semáforo recorre cuatro fases protegidas: recto y
+     * derecha de N-S, izquierda de N-S, recto y derecha de E-O e izquierda de
+     * E-O; las de giro a la izquierda duran la mitad de green-ms y tras cada
+     * fase hay un amarillo de despeje sin nuevas entradas. Con verde, el
+     * primero de cada carril entra cuando ConflictAdmission lo permite, así
+     * que un giro a la izquierda espera a que salga el tráfico opuesto de la
+     * fase anterior.
+     * 
+     * La aproximación, las velocidades y los tiempos de generación son los
+     * del cruce de dos direcciones; la diferencia está en el modelo de
+     * admisión, para comparar el rendimiento de ambos.
+     */
+    static final class FourWaySimulation {
+        /** Fin del verde de la fase actual */
+        private static final int EV_LIGHT_YELLOW = 0;
+        /** Fin del amarillo: siguiente fase */
+        private static final int EV_LIGHT_SWITCH = 1;
+        private static final int EV_SPAWN = 2;
+        /** Fin del retardo inicial: el vehículo empieza a aproximarse */
+        private static final int EV_APPROACH = 3;
+        /** El vehículo llega a la línea de parada de su carril */
+        private static final int EV_ARRIVE = 4;
+        /** El vehículo deja libre el área del cruce */
+        private static final int EV_CLEARED = 5;
+        /** El vehículo abandona el sistema */
+        private static final int EV_REMOVE = 6;
+        private static final int TYPE_BITS = 3;
+
+        /** Distancia de inicio a parada (igual que en el cruce de dos direcciones) */
+        private static final double APPROACH_DISTANCE = 270.0;
+        /** Recorrido dentro del cruce por giro (recto, izquierda, derecha) */
+        private static final double[] BOX_DISTANCE = { 80.0, 110.0, 50.0 };
+        /** Recorrido desde la salida del cruce hasta fuera de la pantalla */
+        private static final double EXIT_DISTANCE = 380.0;
+
+        /** Movimientos con verde en cada fase */
+        private static final int[] PHASES = {
+                mask(0, ConflictMatrix.STRAIGHT, ConflictMatrix.RIGHT) | mask(2, ConflictMatrix.STRAIGHT,
+                        ConflictMatrix.RIGHT),
+                mask(0, ConflictMatrix.LEFT) | mask(2, ConflictMatrix.LEFT),
+                mask(1, ConflictMatrix.STRAIGHT, ConflictMatrix.RIGHT) | mask(3, ConflictMatrix.STRAIGHT,
+                        ConflictMatrix.RIGHT),
+                mask(1, ConflictMatrix.LEFT) | mask(3, ConflictMatrix.LEFT) };
+
+        private final SimulationConfig config;
+        private final int maxVehicles;
+        private final long seed;
+        private final Random spawner;
+        private final EventCalendar calendar = new EventCalendar();
+        private final ConflictAdmission admission;
+        /** Una cola FIFO por movimiento (carril) */
+        private final IntQueue[] lanes = new IntQueue[ConflictMatrix.COUNT];
+
+        // Por slot de vehículo
+        private int[] ids = new int[1024];
+        private byte[] movements = new byte[1024];
+        private float[] speeds = new float[1024];
+        private long[] arrivedAt = new long[1024];
+        private int[] freeSlots = new int[1024];
+        private int freeCount = 0;
+        private int highWater = 0;
+
+        private long now = 0;
+        private int phase = 0;
+        /** Fase en amarillo: no entra nadie nuevo */
+        private boolean yellow = false;
+        private int vehicleCounter = 0;
+        private int activeVehicles = 0;
+
+        // Estadísticas
+        private long eventsProcessed = 0;
+        private long crossings = 0;
+        private final long[] crossingsByMovement = new long[ConflictMatrix.COUNT];
+        private int maxInside = 0;
+        /** Espera desde la línea de parada hasta entrar en el cruce (ms) */
+        private final LatencyHistogram waitHistogram = new LatencyHistogram();
+        /** Duración simulada de cada fase, con N-S y E-O como en el cruce de dos direcciones */
+        private final PhaseStats phaseStats = new PhaseStats();
+
+        /**
+         * @param config Configuración (permits es el cupo de cada movimiento)
+         */
+        FourWaySimulation(SimulationConfig config) {
+            this.config = config;
+            this.maxVehicles = config.getMaxVehicles();
+            this.seed = config.getSeed();
+            this.spawner = RandomStreams.spawner(seed);
+            this.admission = new ConflictAdmission(config.getPermits());
+            for (int m = 0; m < lanes.length; m++)
+                lanes[m] = new IntQueue();
+        }
+
+        /** Ejecuta la simulación hasta que todos los vehículos han salido */
+        void run() {
+            if (maxVehicles == 0)
+                return;
+            schedule(phaseGreenMs(), EV_LIGHT_YELLOW, 0, 0);
+            schedule(config.nextSpawnDelay(spawner), EV_SPAWN, 0, 0);
+            while (crossings < maxVehicles || activeVehicles > 0) {
+                now = calendar.peekTime();
+                int payload = calendar.poll();
+                eventsProcessed++;
+                dispatch(payload & ((1 << TYPE_BITS) - 1), payload >>> TYPE_BITS);
+            }
+        }
+
+        private void dispatch(int type, int slot) {
+            switch (type) {
+                case EV_LIGHT_YELLOW:
+                    yellow = true;
+                    schedule(config.getYellowMs(), EV_LIGHT_SWITCH, 0, 0);
+                    break;
+                case EV_LIGHT_SWITCH:
+                    phase = (phase + 1) % PHASES.length;
+                    yellow = false;
+                    schedule(phaseGreenMs(), EV_LIGHT_YELLOW, 0, 0);
+                    admit();
+                    break;
+                case EV_SPAWN:
+                    spawn();
+                    if (vehicleCounter < maxVehicles)
+                        schedule(config.nextSpawnDelay(spawner), EV_SPAWN, 0, 0);
+                    break;
+                case EV_APPROACH:
+                    long approach = DiscreteEventSimulation.moveDuration(APPROACH_DISTANCE, speeds[slot]);
+                    phaseStats.record(ConflictMatrix.direction(movements[slot]), PhaseStats.APPROACH,
+                            approach * 1_000_000L);
+                    schedule(approach, EV_ARRIVE, slot, ids[slot]);
+                    break;
+                case EV_ARRIVE:
+                    arrivedAt[slot] = now;
+                    lanes[movements[slot]].add(slot);
+                    admit();
+                    break;
+                case EV_CLEARED:
+                    admission.release(movements[slot]);
+                    crossings++;
+                    crossingsByMovement[movements[slot]]++;
+                    schedule(DiscreteEventSimulation.moveDuration(EXIT_DISTANCE, speeds[slot]) + 500, EV_REMOVE,
+                            slot, ids[slot]);
+                    admit();
+                    break;
+                case EV_REMOVE:
+                    activeVehicles--;
+                    freeSlots[freeCount++] = slot;
+                    break;
+                default:
+                    throw new IllegalStateException("Tipo de evento desconocido: " + type);
+            }
+        }
+
+        /** Crea un vehículo con acceso del generador y giro de su propio flujo aleatorio */
+        private void spawn() {
+            int id = ++vehicleCounter;
+            int approach = spawner.nextInt(ConflictMatrix.APPROACHES);
+            double u = RandomStreams.uniform(seed, id, RandomStreams.DRAW_ROUTE);
+            int turn = u < 0.6 ? ConflictMatrix.STRAIGHT : u < 0.8 ? ConflictMatrix.LEFT : ConflictMatrix.RIGHT;
+            int slot = allocate();
+            ids[slot] = id;
+            movements[slot] = (byte) ConflictMatrix.movement(approach, turn);
+            speeds[slot] = (float) sampleSpeed(RandomStreams.uniform(seed, id, RandomStreams.DRAW_SPEED));
+            activeVehicles++;
+            schedule(startDelay(seed, id), EV_APPROACH, slot, id);
+        }
+
+        /**
+         * Deja entrar en el cruce al primero de cada carril con verde mientras
+         * la matriz de conflictos y el cupo de su movimiento lo permitan.
+         */
+        private void admit() {
+            if (yellow)
+                return;
+            int green = PHASES[phase];
+            for (int m = 0; m < ConflictMatrix.COUNT; m++) {
+                if ((green & 1 << m) == 0)
+                    continue;
+                IntQueue lane = lanes[m];
+                while (lane.size() > 0 && admission.tryAcquire(m)) {
+                    int slot = lane.poll();
+                    Direction dir = ConflictMatrix.direction(m);
+                    long box = DiscreteEventSimulation.moveDuration(BOX_DISTANCE[m % 3], speeds[slot]);
+                    waitHistogram.record(now - arrivedAt[slot]);
+                    phaseStats.record(dir, PhaseStats.LIGHT_WAIT, (now - arrivedAt[slot]) * 1_000_000L);
+                    phaseStats.record(dir, PhaseStats.CROSSING, box * 1_000_000L);
+                    maxInside = Math.max(maxInside, admission.total());
+                    schedule(box, EV_CLEARED, slot, ids[slot]);
+                }
+            }
+        }
+
+        /** @return Duración del verde de la fase actual (la mitad en las de giro a la izquierda) */
+        private long phaseGreenMs() {
+            return phase % 2 == 0 ? config.getGreenMs() : Math.max(1, config.getGreenMs() / 2);
+        }
+
+        private static int mask(int approach, int... turns) {
+            int m = 0;
+            for (int t : turns)
+                m |= 1 << ConflictMatrix.movement(approach, t);
+            return m;
+        }
+
+        /** @return Slot libre (las columnas crecen al doble si hace falta) */
+        private int allocate() {
+            if (freeCount > 0)
+                return freeSlots[--freeCount];
+            if (highWater == ids.length) {
+                int cap = ids.length * 2;
+                ids = Arrays.copyOf(ids, cap);
+                movements = Arrays.copyOf(movements, cap);
+                speeds = Arrays.copyOf(speeds, cap);
+                arrivedAt = Arrays.copyOf(arrivedAt, cap);
+                freeSlots = Arrays.copyOf(freeSlots, cap);
+            }
+            return highWater++;
+        }
+
+        /** Programa un evento; a igual instante, los del semáforo van primero y después por id */
+        private void schedule(long delayMs, int type, int slot, int identity) {
+            calendar.add(now + Math.max(0, delayMs), (long) type << 40 | identity, slot << TYPE_BITS | type);
+        }
+
+        /**
+         * Construye el resumen de la ejecución.
+         * 
+         * @param wallNanos Tiempo real que tardó la simulación
+         * @return Texto con cruces, esperas, caudal y reparto por movimiento
+         */
+        String summary(long wallNanos) {
+            double wallSeconds = Math.max(wallNanos, 1) / 1e9;
+            StringBuilder sb = new StringBuilder(String.format(
+                    "Cruce de cuatro accesos completado: %d vehículos, tiempo simulado %.1f s, caudal %.0f vehículos/h, "
+                            + "espera media %.1f ms, p99 %d ms, máxima %d ms, hasta %d vehículos a la vez en el cruce, "
+                            + "%d eventos en %.3f s reales",
+                    crossings, now / 1000.0, now == 0 ? 0.0 : crossings * 3_600_000.0 / now, waitHistogram.mean(),
+                    waitHistogram.percentile(99.0), waitHistogram.max(), maxInside, eventsProcessed, wallSeconds));
+            sb.append("\nCruces por movimiento:");
+            for (int m = 0; m < ConflictMatrix.COUNT; m++)
+                sb.append(' ').append(ConflictMatrix.name(m)).append('=').append(crossingsByMovement[m]);
+            return sb.toString();
+        }
+
+        // ==================== RESULTADOS ====================
+
+        /** @return Vehículos que completaron el cruce */
+        long crossings() {
+            return crossings;
+        }
+
+        /** @return Tiempo simulado transcurrido en milisegundos */
+        long simulatedMs() {
+            return now;
+        }
+
+        /** @return Duración simulada de cada fase por dirección (ns) */
+        PhaseStats phaseStats() {
+            return phaseStats;
+        }
+
+        /** @return Histograma de esperas (ms) desde la línea de parada hasta entrar en el cruce */
+        LatencyHistogram waitHistogram() {
+            return waitHistogram;
+        }
+    }
+
+    /**
+     * Histograma de alto rango dinámico (estilo HdrHistogram) para latencias.
+     * 
+     * Los valores menores que 128 tienen su propio contador; a partir de ahí
+     * cada potencia de dos se divide en 64 sub-cubetas, por lo que el error
+     * relativo de cualquier percentil es menor que 1/64 (~1.6%) para valores
+     * de hasta 2^63 con menos de 4000 contadores.
+     */
+    static final class LatencyHistogram {
+        /** Bits de resolución: 2^SUB_BITS contadores exactos al principio */
+        private static final int SUB_BITS = 7;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int HALF = SUB_COUNT / 2;
+        /** Número de cubetas: exactas + 64 por cada desplazamiento posible */
+        static final int LENGTH = SUB_COUNT + (64 - SUB_BITS) * HALF;
+
+        private final long[] counts = new long[LENGTH];
+        private long total = 0;
+        private long sum = 0;
+        private long max = 0;
+
+        /**
+         * Registra un valor (los negativos cuentan como 0). No reserva memoria.
+         * 
+         * @param value Valor a registrar
+         */
+        void record(long value) {
+            long v = Math.max(0, value);
+            counts[indexOf(v)]++;
+            total++;
+            sum += v;
+            if (v > max)
+                max = v;
+        }
+
+        /** @return Índice de la cubeta que contiene el valor */
+        static int indexOf(long v) {
+            if (v < SUB_COUNT)
+                return (int) v;
+            int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+            return SUB_COUNT + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+        }
+
+        /** @return Mayor valor que cae en la cubeta dada */
+        static long highestValueAt(int index) {
+            if (index < SUB_COUNT)
+                return index;
+            int shift = (index - SUB_COUNT) / HALF + 1;
+            long top = (index - SUB_COUNT) % HALF + HALF;
+            return ((top + 1) << shift) - 1;
+        }
+
+        /**
+         * Suma los contadores de otro histograma a este.
+         * 
+         * @param other Histograma a sumar
+         */
+        void merge(LatencyHistogram other) {
+            for (int i = 0; i < LENGTH; i++)
+                counts[i] += other.counts[i];
+            total += other.total;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        /**
+         * @param percentile Percentil entre 0 y 100
+         * @return Valor tal que ese porcentaje de los registros es menor o igual
+         *         (0 si el histograma está vacío)
+         */
+        long percentile(double percentile) {
+            if (total == 0)
+                return 0;
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < LENGTH; i++) {
+                seen += counts[i];
+                if (seen >= target)
+                    return Math.min(highestValueAt(i), max);
+            }
+            return max;
+        }
+
+        /** @return Número de valores registrados */
+        long count() {
+            return total;
+        }
+
+        /** @return Media exacta de los valores registrados */
+        double mean() {
+            return total == 0 ? 0.0 : (double) sum / total;
+        }
+
+        /** @return Mayor valor registrado */
+        long max() {
+            return max;
+        }
+    }
+
+    /**
+     * Variante concurrente de LatencyHistogram: cualquier número de hilos
+     * puede registrar a la vez sin cerrojos ni reservas de memoria (un
+     * incremento atómico por contador y un CAS ocasional para el máximo).
+     * Se lee copiando los contadores a un LatencyHistogram, que se puede
+     * fusionar con otros.
+     */
+    static final class AtomicHistogram {
+        private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.LENGTH);
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Registra un valor (los negativos cuentan como 0).
+         * 
+         * @param value Valor a registrar
+         */
+        void record(long value) {
+            long v = Math.max(0, value);
+            counts.incrementAndGet(LatencyHistogram.indexOf(v));
+            sum.addAndGet(v);
+            long m;
+            while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+                // Otro hilo subió el máximo: reintentar con el nuevo valor
+            }
+        }
+
+        /**
+         * Suma el contenido actual a un histograma. Con registros en curso la
+         * copia puede no incluir los más recientes, pero cada contador es exacto.
+         * 
+         * @param into Histograma destino
+         */
+        void copyInto(LatencyHistogram into) {
+            long total = 0;
+            for (int i = 0; i < LatencyHistogram.LENGTH; i++) {
+                long c = counts.get(i);
+                into.counts[i] += c;
+                total += c;
+            }
+            into.total += total;
+            into.sum += sum.get();
+            into.max = Math.max(into.max, max.get());
+        }
+    }
+
+    /**
+     * Duraciones de las fases de Vehicle.run, en nanosegundos, con un
+     * AtomicHistogram por dirección y fase:
+     * 
+     * - APPROACH: desde que empieza a moverse hasta el punto de parada
+     * - LIGHT_WAIT: esperando luz verde en lightChanged
+     * - PERMIT_WAIT: esperando en crossingSemaphore.acquire()
+     * - CROSSING: cruzando con el permiso tomado
+     */
+    static final class PhaseStats {
+        static final int APPROACH = 0;
+        static final int LIGHT_WAIT = 1;
+        static final int PERMIT_WAIT = 2;
+        static final int CROSSING = 3;
+        static final String[] PHASE_NAMES = { "aproximación", "espera de luz", "espera de permiso", "cruce" };
+
+        /** Percentiles del informe */
+        private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+        private final AtomicHistogram[] histograms = new AtomicHistogram[DIRECTIONS.length * PHASE_NAMES.length];
+
+        PhaseStats() {
+            for (int i = 0; i < histograms.length; i++)
+                histograms[i] = new AtomicHistogram();
+        }
+
+        /**
+         * @param dir   Dirección del vehículo
+         * @param phase APPROACH, LIGHT_WAIT, PERMIT_WAIT o CROSSING
+         * @param nanos Duración de la fase
+         */
+        void record(Direction dir, int phase, long nanos) {
+            histograms[phase * DIRECTIONS.length + dir.ordinal()].record(nanos);
+        }
+
+        /**
+         * @param dir   Dirección, o null para sumar ambas
+         * @param phase Fase
+         * @return Copia del histograma de esa fase
+         */
+        LatencyHistogram snapshot(Direction dir, int phase) {
+            LatencyHistogram h = new LatencyHistogram();
+            for (Direction d : DIRECTIONS) {
+                if (dir == null || dir == d)
+                    histograms[phase * DIRECTIONS.length + d.ordinal()].copyInto(h);
+            }
+            return h;
+        }
+
+        /** @return Tabla con n, p50, p90, p99, p99.9 y máximo (ms) por fase y dirección */
+        String report() {
+            StringBuilder sb = new StringBuilder("Latencias por fase (ms):");
+            sb.append(String.format("%n  %-18s %-10s %9s %9s %9s %9s %9s %9s", "fase", "dirección", "n", "p50",
+                    "p90", "p99", "p99.9", "máx"));
+            for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+                for (Direction d : DIRECTIONS) {
+                    LatencyHistogram h = snapshot(d, phase);
+                    sb.append(String.format("%n  %-18s %-10s %9d", PHASE_NAMES[phase], d, h.count()));
+                    for (double p : PERCENTILES)
+                        sb.append(String.format(Locale.ROOT, " %9.1f", h.percentile(p) / 1e6));
+                    sb.append(String.format(Locale.ROOT, " %9.1f", h.max() / 1e6));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Ejecuta muchas simulaciones headless independientes en paralelo para
+     * explorar combinaciones de parámetros.
+     * 
+     * Cada eje es una clave de SimulationConfig con una lista de valores
+     * (--sweep=permits=2,3,4;green-ms=3000,4000). Se ejecuta el producto
+     * cartesiano completo, o una muestra aleatoria de --sweep-samples=N
+     * combinaciones, repetido --sweep-replicas=R veces.
+     * 
+     * Las simulaciones se reparten en un ForkJoinPool con tantos hilos como
+     * procesadores. La semilla de cada ejecución se deriva de la semilla base
+     * y del número de ejecución, y las filas se escriben en orden, así que la
+     * misma semilla produce exactamente la misma tabla.
+     */
+    static final class SweepRunner {
+        /** Resultado de una ejecución */
+        private static final class Row {
+            final int run;
+            final int replica;
+            final String[] values;
+            final SimulationConfig config;
+            final DiscreteEventSimulation sim;
+
+            Row(int run, int replica, String[] values, SimulationConfig config, DiscreteEventSimulation sim) {
+                this.run = run;
+                this.replica = replica;
+                this.values = values;
+                this.config = config;
+                this.sim = sim;
+            }
+        }
+
+        private final SimulationConfig base;
+        private final List<String> keys = new ArrayList<>();
+        private final List<String[]> axes = new ArrayList<>();
+        private int samples = 0;
+        private int replicas = 1;
+        private Path output;
+
+        /** @param base Configuración de partida (la copia cada ejecución) */
+        SweepRunner(SimulationConfig base) {
+            this.base = base;
+        }
+
+        /**
+         * Interpreta los argumentos --sweep*.
+         * 
+         * @param arg Argumento de línea de comandos
+         * @return true si el argumento pertenece al barrido
+         */
+        boolean accept(String arg) {
+            if (arg.startsWith("--sweep=")) {
+                for (String axis : arg.substring("--sweep=".length()).split(";")) {
+                    int eq = axis.indexOf('=');
+                    if (eq <= 0)
+                        throw new IllegalArgumentException("Eje de barrido inválido: " + axis);
+                    String key = axis.substring(0, eq).trim();
+                    String[] values = axis.substring(eq + 1).split(",");
+                    for (String v : values)
+                        base.copy().set(key, v.trim()); // Validar antes de lanzar nada
+                    keys.add(key);
+                    axes.add(values);
+                }
+                return true;
+            } else if (arg.startsWith("--sweep-samples=")) {
+                samples = Integer.parseInt(arg.substring("--sweep-samples=".length()));
+                return true;
+            } else if (arg.startsWith("--sweep-replicas=")) {
+                replicas = Math.max(1, Integer.parseInt(arg.substring("--sweep-replicas=".length())));
+                return true;
+            } else if (arg.startsWith("--sweep-out=")) {
+                output = Paths.get(arg.substring("--sweep-out=".length()));
+                return true;
+            }
+            return false;
+        }
+
+        /** @return true si se definió al menos un eje */
+        boolean isEnabled() {
+            return !axes.isEmpty();
+        }
+
+        /**
+         * Ejecuta el barrido y escribe la tabla de resultados (CSV) en el
+         * archivo de salida o en la salida estándar.
+         * 
+         * @throws IOException          si no se puede escribir el resultado
+         * @throws InterruptedException si se interrumpe la espera
+         */
+        void run() throws IOException, InterruptedException {
+            List<String[]> combos = combinations();
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            List<Callable<Row>> tasks = new ArrayList<>();
+            int run = 0;
+            for (String[] combo : combos) {
+                for (int r = 0; r < replicas; r++) {
+                    final int index = run++;
+                    final int replica = r;
+                    tasks.add(() -> runOne(index, replica, combo));
+                }
+            }
+
+            long t0 = System.nanoTime();
+            List<Row> rows = new ArrayList<>();
+            try {
+                for (Future<Row> f : pool.invokeAll(tasks)) {
+                    rows.add(f.get());
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Falló una simulación del barrido", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            double seconds = (System.nanoTime() - t0) / 1e9;
+
+            StringBuilder out = new StringBuilder();
+            out.append("run,replica,seed");
+            for (String k : keys)
+                out.append(',').append(k);
+            out.append(",vehicles,crossings,simulated_s,throughput_per_h,mean_wait_ms,p99_wait_ms,max_wait_ms,"
+                    + "mean_queue,max_queue\n");
+            for (Row row : rows) {
+                DiscreteEventSimulation sim = row.sim;
+                LatencyHistogram waits = sim.waitHistogram();
+                double simSeconds = sim.simulatedMs() / 1000.0;
+                out.append(row.run).append(',').append(row.replica).append(',').append(row.config.getSeed());
+                for (String v : row.values)
+                    out.append(',').append(v.trim());
+                out.append(',').append(row.config.getMaxVehicles())
+                        .append(',').append(sim.crossings())
+                        .append(',').append(String.format(Locale.ROOT, "%.1f", simSeconds))
+                        .append(',').append(String.format(Locale.ROOT, "%.2f",
+                                simSeconds == 0 ? 0.0 : sim.crossings() * 3600.0 / simSeconds))
+                        .append(',').append(String.format(Locale.ROOT, "%.1f", waits.mean()))
+                        .append(',').append(waits.percentile(99.0))
+                        .append(',').append(waits.max())
+                        .append(',').append(String.format(Locale.ROOT, "%.2f", sim.meanQueueLength()))
+                        .append(',').append(sim.maxQueueLength())
+                        .append('\n');
+            }
+
+            if (output != null) {
+                Files.write(output, out.toString().getBytes(StandardCharsets.UTF_8));
+                System.out.printf("Barrido completado: %d simulaciones en %.2f s -> %s%n", rows.size(), seconds,
+                        output);
+            } else {
+                System.out.print(out);
+                System.out.flush();
+                System.err.printf("Barrido completado: %d simulaciones en %.2f s%n", rows.size(), seconds);
+            }
+        }
+
+        /** Ejecuta una simulación con la combinación dada */
+        private Row runOne(int run, int replica, String[] combo) {
+            SimulationConfig c = base.copy();
+            for (int i = 0; i < keys.size(); i++)
+                c.set(keys.get(i), combo[i].trim());
+            // Semilla derivada (mezcla de SplitMix64) para que cada ejecución sea independiente
+            c.setSeed(RandomStreams.mix(base.getSeed() + run * 0x9E3779B97F4A7C15L));
+            DiscreteEventSimulation sim = new DiscreteEventSimulation(c);
+            sim.run();
+            return new Row(run, replica, combo, c, sim);
+        }
+
+        /** @return Producto cartesiano de los ejes, o una muestra sin repetición */
+        private List<String[]> combinations() {
+            List<String[]> all = new ArrayList<>();
+            all.add(new String[0]);
+            for (String[] axis : axes) {
+                List<String[]> next = new ArrayList<>();
+                for (String[] prefix : all) {
+                    for (String v : axis) {
+                        String[] combo = Arrays.copyOf(prefix, prefix.length + 1);
+                        combo[prefix.length] = v;
+                        next.add(combo);
+                    }
+                }
+                all = next;
+            }
+            if (samples > 0 && samples < all.size()) {
+                Collections.shuffle(all, new Random(base.getSeed()));
+                all = new ArrayList<>(all.subList(0, samples));
+            }
+            return all;
+        }
+    }
+
+    /**
+     * Flujos aleatorios independientes derivados de la semilla de la simulación.
+     * 
+     * El generador tiene su propio Random (intervalos y direcciones) y cada
+     * vehículo tiene un flujo sin estado: el valor número draw del vehículo id
+     * es una función pura de (semilla, id, draw). Así los valores no dependen
+     * del orden en que los hilos se ejecutan, y el modo con hilos, el motor de
+     * eventos discretos y la reproducción obtienen exactamente los mismos.
+     */
+    static final class RandomStreams {
+        /** Valor usado para la velocidad del vehículo */
+        static final int DRAW_SPEED = 0;
+        /** Valor usado para el retardo inicial del vehículo */
+        static final int DRAW_START_DELAY = 1;
+        /**
+         * Primer valor de la ruta: en la red, el destino y después uno por
+         * cruce; en el cruce de cuatro accesos, el giro
+         */
+        static final int DRAW_ROUTE = 2;
+
+        private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+        private RandomStreams() {
+        }
+
+        /** @return Generador del flujo de generación de vehículos */
+        static Random spawner(long seed) {
+            return new Random(mix(seed ^ 0x5350415745524E53L)); // "SPAWNERS"
+        }
+
+        /**
+         * @param seed  Semilla de la simulación
+         * @param entry Entrada de la red
+         * @return Generador de los intervalos de llegada de una entrada
+         */
+        static Random spawner(long seed, int entry) {
+            return new Random(mix(mix(seed ^ 0x5350415745524E53L) + entry * GOLDEN));
+        }
+
+        /**
+         * @param seed      Semilla de la simulación
+         * @param vehicleId Vehículo
+         * @param draw      Número de valor dentro del flujo del vehículo
+         * @return Número uniforme en [0, 1)
+         */
+        static double uniform(long seed, int vehicleId, int draw) {
+            long z = mix(seed + mix(vehicleId * GOLDEN + draw));
+            return (z >>> 11) * 0x1.0p-53;
+        }
+
+        /** Función de mezcla de SplitMix64 */
+        static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Huella de una secuencia de registros de traza.
+     * 
+     * Calcula tres hashes acumulativos: uno sobre todos los campos de todos
+     * los registros, otro sobre el orden de concesión de permisos y otro sobre
+     * la secuencia de cambios de luz. Opcionalmente reenvía cada registro a
+     * otra traza.
+     */
+    static final class TraceFingerprint implements TraceSink {
+        private final TraceSink delegate;
+        private long full = 1;
+        private long acquires = 1;
+        private long lights = 1;
+        private long records = 0;
+
+        /** @param delegate Traza a la que reenviar los registros (puede ser null) */
+        TraceFingerprint(TraceSink delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void record(long time, byte type, int vehicleId, int direction, long value) {
+            records++;
+            full = step(step(step(step(step(full, time), type), vehicleId), direction), value);
+            if (type == TraceWriter.PERMIT_ACQUIRE)
+                acquires = step(acquires, vehicleId);
+            else if (type == TraceWriter.LIGHT_GREEN || type == TraceWriter.LIGHT_YELLOW)
+                lights = step(step(lights, type), direction);
+            if (delegate != null)
+                delegate.record(time, type, vehicleId, direction, value);
+        }
+
+        private static long step(long h, long v) {
+            return RandomStreams.mix(h * 31 + v);
+        }
+
+        long full() {
+            return full;
+        }
+
+        long acquires() {
+            return acquires;
+        }
+
+        long lights() {
+            return lights;
+        }
+
+        long records() {
+            return records;
+        }
+    }
+
+    /**
+     * Decisiones extraídas de una traza para reproducirla: semilla y permisos
+     * (RUN_START), instante y dirección de cada vehículo generado, cada cambio
+     * de luz y el orden en que se concedieron los permisos de cruce.
+     * 
+     * Los instantes se guardan en milisegundos, la unidad del motor de eventos.
+     */
+    static final class ReplayScript {
+        long seed;
+        int permits = 3;
+        int clock;
+        boolean hasRunStart = false;
+
+        long[] spawnTimes = new long[1024];
+        byte[] spawnDirs = new byte[1024];
+        int spawnCount = 0;
+
+        long[] lightTimes = new long[256];
+        byte[] lightTypes = new byte[256];
+        byte[] lightDirs = new byte[256];
+        int lightCount = 0;
+
+        int[] acquireOrder = new int[1024];
+        int acquireCount = 0;
+
+        /** Huella de la traza original */
+        final TraceFingerprint original = new TraceFingerprint(null);
+
+        private ReplayScript() {
+        }
+
+        /**
+         * Lee una traza completa.
+         * 
+         * @param dir Carpeta de la traza
+         * @return Guion de reproducción
+         * @throws IOException si la traza no se puede leer
+         */
+        static ReplayScript load(Path dir) throws IOException {
+            ReplayScript s = new ReplayScript();
+            s.clock = TraceReader.scan(dir, s::add);
+            return s;
+        }
+
+        private void add(long time, int vehicleId, int type, int direction, long value) {
+            original.record(time, (byte) type, vehicleId, direction, value);
+            long ms = clock == TraceWriter.CLOCK_SIMULATED ? time / 1_000_000L : (time + 500_000L) / 1_000_000L;
+            switch (type) {
+                case TraceWriter.RUN_START:
+                    seed = value;
+                    permits = vehicleId;
+                    hasRunStart = true;
+                    break;
+                case TraceWriter.SPAWN:
+                    if (spawnCount == spawnTimes.length) {
+                        spawnTimes = Arrays.copyOf(spawnTimes, spawnCount * 2);
+                        spawnDirs = Arrays.copyOf(spawnDirs, spawnCount * 2);
+                    }
+                    spawnTimes[spawnCount] = ms;
+                    spawnDirs[spawnCount++] = (byte) direction;
+                    break;
+                case TraceWriter.LIGHT_GREEN:
+                case TraceWriter.LIGHT_YELLOW:
+                    if (lightCount == lightTimes.length) {
+                        lightTimes = Arrays.copyOf(lightTimes, lightCount * 2);
+                        lightTypes = Arrays.copyOf(lightTypes, lightCount * 2);
+                        lightDirs = Arrays.copyOf(lightDirs, lightCount * 2);
+                    }
+                    lightTimes[lightCount] = ms;
+                    lightTypes[lightCount] = (byte) type;
+                    lightDirs[lightCount++] = (byte) direction;
+                    break;
+                case TraceWriter.PERMIT_ACQUIRE:
+                    if (acquireCount == acquireOrder.length)
+                        acquireOrder = Arrays.copyOf(acquireOrder, acquireCount * 2);
+                    acquireOrder[acquireCount++] = vehicleId;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /** @return Resumen del contenido del guion */
+        String describe() {
+            return String.format("%d vehículos, %d cambios de luz, %d permisos, semilla %d, %d permisos de cruce%s",
+                    spawnCount, lightCount, acquireCount, seed, permits,
+                    hasRunStart ? "" : " (traza sin RUN_START: semilla desconocida)");
+        }
+
+        /**
+         * Compara la reejecución con la traza original.
+         * 
+         * @param replayed Huella de los registros producidos al reproducir
+         * @return Resultado de la verificación
+         */
+        String verify(TraceFingerprint replayed) {
+            boolean decisions = replayed.acquires() == original.acquires() && replayed.lights() == original.lights();
+            if (clock == TraceWriter.CLOCK_SIMULATED) {
+                boolean identical = decisions && replayed.full() == original.full()
+                        && replayed.records() == original.records();
+                return identical ? "Reproducción idéntica a la traza (" + replayed.records() + " registros)"
+                        : "La reproducción DIVERGE de la traza (" + replayed.records() + " de " + original.records()
+                                + " registros)";
+            }
+            return decisions ? "Decisiones reproducidas: mismo orden de permisos y de cambios de luz"
+                    : "La reproducción DIVERGE en el orden de permisos o de cambios de luz";
+        }
+    }
+
+    /**
+     * Método de utilidad para registrar mensajes de texto del sistema
+     * (inicio/fin de simulación, recargas de configuración, etc.).
+     * 
+     * Los eventos frecuentes de vehículos y semáforos usan
+     * eventLog.event, que no construye cadenas en el hilo que los produce.
+     * 
+     * @param s Mensaje a registrar en el log
+     */
+    private void log(String s) {
+        eventLog.message(EventLog.Level.INFO, s);
+    }
+}
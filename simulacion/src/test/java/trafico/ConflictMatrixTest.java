@@ -0,0 +1,104 @@
+package trafico;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import trafico.TrafficSemaphoreSimulationV2.ConflictAdmission;
+import trafico.TrafficSemaphoreSimulationV2.ConflictMatrix;
+
+/**
+ * Pruebas de la matriz de conflictos del cruce de cuatro accesos y del
+ * control de admisión que la usa.
+ */
+class ConflictMatrixTest {
+    private static final int N = 0;
+    private static final int E = 1;
+    private static final int S = 2;
+    private static final int O = 3;
+
+    private static boolean conflict(int a, int b) {
+        return (ConflictMatrix.conflicts(a) & (1 << b)) != 0;
+    }
+
+    @Test
+    void rectosOpuestosSonCompatibles() {
+        int n = ConflictMatrix.movement(N, ConflictMatrix.STRAIGHT);
+        int s = ConflictMatrix.movement(S, ConflictMatrix.STRAIGHT);
+        assertFalse(conflict(n, s));
+        int e = ConflictMatrix.movement(E, ConflictMatrix.STRAIGHT);
+        int o = ConflictMatrix.movement(O, ConflictMatrix.STRAIGHT);
+        assertFalse(conflict(e, o));
+    }
+
+    @Test
+    void izquierdaChocaConElRectoOpuesto() {
+        int nLeft = ConflictMatrix.movement(N, ConflictMatrix.LEFT);
+        int sStraight = ConflictMatrix.movement(S, ConflictMatrix.STRAIGHT);
+        assertTrue(conflict(nLeft, sStraight));
+    }
+
+    @Test
+    void derechaChocaConElRectoQueSalePorElMismoCarril() {
+        int nRight = ConflictMatrix.movement(N, ConflictMatrix.RIGHT);
+        int eStraight = ConflictMatrix.movement(E, ConflictMatrix.STRAIGHT);
+        assertEquals(ConflictMatrix.exitSide(nRight), ConflictMatrix.exitSide(eStraight));
+        assertTrue(conflict(nRight, eStraight));
+    }
+
+    @Test
+    void rectosPerpendicularesChocan() {
+        int n = ConflictMatrix.movement(N, ConflictMatrix.STRAIGHT);
+        int e = ConflictMatrix.movement(E, ConflictMatrix.STRAIGHT);
+        assertTrue(conflict(n, e));
+    }
+
+    @Test
+    void laMatrizEsSimetricaYSinConflictosDentroDeUnAcceso() {
+        for (int a = 0; a < ConflictMatrix.COUNT; a++) {
+            for (int b = 0; b < ConflictMatrix.COUNT; b++) {
+                assertEquals(conflict(a, b), conflict(b, a),
+                        ConflictMatrix.name(a) + " / " + ConflictMatrix.name(b));
+                if (a / 3 == b / 3)
+                    assertFalse(conflict(a, b), ConflictMatrix.name(a) + " / " + ConflictMatrix.name(b));
+            }
+        }
+    }
+
+    @Test
+    void laAdmisionRespetaConflictosYCupo() {
+        ConflictAdmission admission = new ConflictAdmission(2);
+        int n = ConflictMatrix.movement(N, ConflictMatrix.STRAIGHT);
+        int s = ConflictMatrix.movement(S, ConflictMatrix.STRAIGHT);
+        int e = ConflictMatrix.movement(E, ConflictMatrix.STRAIGHT);
+
+        assertTrue(admission.tryAcquire(n));
+        assertTrue(admission.tryAcquire(n));
+        assertFalse(admission.tryAcquire(n), "cupo del movimiento agotado");
+        assertTrue(admission.tryAcquire(s));
+        assertFalse(admission.tryAcquire(e), "E recto choca con N y S recto");
+        assertEquals(3, admission.total());
+        assertEquals((1 << n) | (1 << s), admission.activeMask());
+    }
+
+    @Test
+    void laMascaraSeLimpiaAlSalirElUltimoVehiculoDelMovimiento() {
+        ConflictAdmission admission = new ConflictAdmission(2);
+        int n = ConflictMatrix.movement(N, ConflictMatrix.STRAIGHT);
+        int e = ConflictMatrix.movement(E, ConflictMatrix.STRAIGHT);
+
+        assertTrue(admission.tryAcquire(n));
+        assertTrue(admission.tryAcquire(n));
+        admission.release(n);
+        assertEquals(1 << n, admission.activeMask(), "aún queda un vehículo de N recto");
+        assertFalse(admission.tryAcquire(e));
+
+        admission.release(n);
+        assertEquals(0, admission.activeMask());
+        assertEquals(0, admission.total());
+        assertTrue(admission.tryAcquire(e), "el cruce quedó libre");
+        assertEquals(1 << e, admission.activeMask());
+    }
+}
@@ -0,0 +1,147 @@
+package trafico;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import trafico.TrafficSemaphoreSimulationV2.AtomicHistogram;
+import trafico.TrafficSemaphoreSimulationV2.LatencyHistogram;
+
+/**
+ * Percentiles de LatencyHistogram y AtomicHistogram frente a los exactos:
+ * el valor devuelto nunca es menor que el exacto y lo supera en menos de
+ * 1/64 (el error relativo documentado).
+ */
+class HistogramTest {
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 64;
+
+    /** @return Percentil exacto con la misma definición que LatencyHistogram */
+    private static long exact(long[] sorted, double percentile) {
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * sorted.length));
+        return sorted[(int) target - 1];
+    }
+
+    private static void assertPercentiles(long[] values, LatencyHistogram h) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted.length, h.count());
+        assertEquals(sorted[sorted.length - 1], h.max());
+        assertEquals(Arrays.stream(sorted).average().orElse(0), h.mean(), 1e-6);
+        for (double p : PERCENTILES) {
+            long expected = exact(sorted, p);
+            long actual = h.percentile(p);
+            assertTrue(actual >= expected, "p" + p + ": " + actual + " < " + expected);
+            assertTrue(actual - expected <= expected * MAX_RELATIVE_ERROR,
+                    "p" + p + ": " + actual + " frente a " + expected);
+        }
+    }
+
+    /** Valores repartidos en escala logarítmica entre 1 y ~10^9 */
+    private static long[] logUniform(long seed, int n) {
+        Random random = new Random(seed);
+        long[] values = new long[n];
+        for (int i = 0; i < n; i++)
+            values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+        return values;
+    }
+
+    @Test
+    void valoresPequenosSonExactos() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int v = 1; v <= 100; v++)
+            h.record(v);
+        assertEquals(50, h.percentile(50));
+        assertEquals(90, h.percentile(90));
+        assertEquals(99, h.percentile(99));
+        assertEquals(100, h.percentile(99.9));
+        assertEquals(100, h.max());
+        assertEquals(50.5, h.mean(), 1e-9);
+    }
+
+    @Test
+    void percentilesDentroDelErrorRelativo() {
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (i + 1) * 1_000L;
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v : values)
+            h.record(v);
+        assertPercentiles(values, h);
+
+        long[] spread = logUniform(42, 50_000);
+        LatencyHistogram s = new LatencyHistogram();
+        for (long v : spread)
+            s.record(v);
+        assertPercentiles(spread, s);
+    }
+
+    @Test
+    void cadaCubetaRespetaElErrorRelativo() {
+        for (long v = 1; v < 1L << 40; v = v * 3 / 2 + 1) {
+            long high = LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(v));
+            assertTrue(high >= v && high - v <= v * MAX_RELATIVE_ERROR, v + " -> " + high);
+        }
+    }
+
+    @Test
+    void laFusionEquivaleARegistrarTodo() {
+        long[] a = logUniform(1, 20_000);
+        long[] b = logUniform(2, 30_000);
+        LatencyHistogram ha = new LatencyHistogram();
+        LatencyHistogram hb = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+        for (long v : a) {
+            ha.record(v);
+            all.record(v);
+        }
+        for (long v : b) {
+            hb.record(v);
+            all.record(v);
+        }
+        ha.merge(hb);
+
+        long[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        assertPercentiles(both, ha);
+        for (double p : PERCENTILES)
+            assertEquals(all.percentile(p), ha.percentile(p));
+        assertEquals(all.mean(), ha.mean(), 1e-9);
+    }
+
+    @Test
+    void elHistogramaAtomicoNoPierdeRegistrosEntreHilos() throws Exception {
+        int threads = 4;
+        long[][] parts = new long[threads][];
+        for (int t = 0; t < threads; t++)
+            parts[t] = logUniform(100 + t, 25_000);
+        AtomicHistogram atomic = new AtomicHistogram();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] part = parts[t];
+            workers[t] = new Thread(() -> {
+                for (long v : part)
+                    atomic.record(v);
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers)
+            w.join();
+
+        LatencyHistogram h = new LatencyHistogram();
+        atomic.copyInto(h);
+        long[] all = Arrays.stream(parts).flatMapToLong(Arrays::stream).toArray();
+        assertPercentiles(all, h);
+
+        // Dos copias en el mismo destino se suman como una fusión
+        LatencyHistogram twice = new LatencyHistogram();
+        atomic.copyInto(twice);
+        atomic.copyInto(twice);
+        assertEquals(2L * all.length, twice.count());
+        assertEquals(h.percentile(99), twice.percentile(99));
+    }
+}
@@ -0,0 +1,64 @@
+package trafico;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import trafico.TrafficSemaphoreSimulationV2.DiscreteEventSimulation;
+import trafico.TrafficSemaphoreSimulationV2.ReplayScript;
+import trafico.TrafficSemaphoreSimulationV2.SimulationConfig;
+import trafico.TrafficSemaphoreSimulationV2.TraceFingerprint;
+import trafico.TrafficSemaphoreSimulationV2.TraceWriter;
+
+/**
+ * Graba una simulación headless, la reproduce desde la traza y comprueba
+ * que la reejecución es idéntica registro a registro y da las mismas
+ * estadísticas, incluida la cola máxima de permisos.
+ */
+class ReplayTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void laReproduccionCoincideConLaGrabacion() throws Exception {
+        SimulationConfig config = new SimulationConfig();
+        config.setMaxVehicles(300);
+        config.setSeed(7);
+
+        DiscreteEventSimulation recorded = new DiscreteEventSimulation(config);
+        TraceWriter writer = new TraceWriter(dir, 1 << 20, TraceWriter.CLOCK_SIMULATED);
+        TraceFingerprint original = new TraceFingerprint(writer);
+        recorded.setTrace(original);
+        recorded.run();
+        writer.close();
+        assertTrue(recorded.maxPermitQueue() > 0, "la grabación debe formar cola de permisos");
+
+        ReplayScript script = ReplayScript.load(dir);
+        assertEquals(original.full(), script.original.full(), "la traza leída es la grabada");
+        DiscreteEventSimulation replayed = new DiscreteEventSimulation(new SimulationConfig(), script);
+        TraceFingerprint fingerprint = new TraceFingerprint(null);
+        replayed.setTrace(fingerprint);
+        replayed.run();
+
+        assertEquals(original.records(), fingerprint.records());
+        assertEquals(original.full(), fingerprint.full());
+        assertEquals(original.acquires(), fingerprint.acquires());
+        assertEquals(original.lights(), fingerprint.lights());
+        assertTrue(script.verify(fingerprint).startsWith("Reproducción idéntica"), script.verify(fingerprint));
+
+        assertEquals(recorded.crossings(), replayed.crossings());
+        assertEquals(recorded.simulatedMs(), replayed.simulatedMs());
+        assertEquals(recorded.maxPermitQueue(), replayed.maxPermitQueue());
+        assertEquals(recorded.maxQueueLength(), replayed.maxQueueLength());
+        assertEquals(recorded.meanQueueLength(), replayed.meanQueueLength(), 1e-9);
+        assertEquals(recorded.waitHistogram().mean(), replayed.waitHistogram().mean(), 1e-9);
+        assertEquals(recorded.waitHistogram().percentile(99.0), replayed.waitHistogram().percentile(99.0));
+        assertEquals(recorded.waitHistogram().max(), replayed.waitHistogram().max());
+        // El resumen solo difiere en el tiempo real empleado
+        assertEquals(recorded.summary(1_000_000_000L), replayed.summary(1_000_000_000L));
+    }
+}
@@ -0,0 +1,124 @@
+package trafico;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import trafico.TrafficSemaphoreSimulationV2.TraceReader;
+import trafico.TrafficSemaphoreSimulationV2.TraceWriter;
+
+/**
+ * Ida y vuelta de la traza binaria: varios hilos escriben a la vez con
+ * segmentos pequeños para forzar muchos cambios de segmento, y al leerla
+ * deben aparecer todos los registros, una sola vez y sin campos mezclados.
+ */
+class TraceWriterTest {
+    private static final int THREADS = 4;
+    private static final int PER_THREAD = 5_000;
+    /** Registros por segmento: no divide al total, así el último queda a medias */
+    private static final int RECORDS_PER_SEGMENT = 333;
+
+    @TempDir
+    Path dir;
+
+    /** Valor redundante con el resto de campos para detectar registros rotos */
+    private static long checksum(long time, int vehicleId, int direction) {
+        return time * 31 + vehicleId * 7L + direction;
+    }
+
+    @Test
+    void variosHilosConCambioDeSegmento() throws Exception {
+        long segmentBytes = TraceWriter.HEADER_SIZE + (long) RECORDS_PER_SEGMENT * TraceWriter.RECORD_SIZE;
+        TraceWriter writer = new TraceWriter(dir, segmentBytes, TraceWriter.CLOCK_WALL);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < PER_THREAD; i++) {
+                    int vehicleId = thread * PER_THREAD + i;
+                    byte type = (byte) (TraceWriter.SPAWN + i % TraceWriter.EXIT);
+                    writer.record(i, type, vehicleId, thread, checksum(i, vehicleId, thread));
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(writer.close());
+        assertFalse(writer.close(), "el segundo close no hace nada");
+
+        long total = (long) THREADS * PER_THREAD;
+        assertEquals(total, writer.records());
+
+        // Cabeceras: todos los segmentos llenos salvo el último
+        int segments = (int) ((total + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+        for (int s = 0; s < segments; s++) {
+            long expected = Math.min(RECORDS_PER_SEGMENT, total - (long) s * RECORDS_PER_SEGMENT);
+            assertEquals(expected, headerCount(TraceWriter.segmentPath(dir, s)), "segmento " + s);
+        }
+        assertFalse(Files.exists(TraceWriter.segmentPath(dir, segments)), "segmento de más");
+
+        boolean[] seen = new boolean[(int) total];
+        long[] read = { 0 };
+        int clock = TraceReader.scan(dir, (time, vehicleId, type, direction, value) -> {
+            read[0]++;
+            assertTrue(vehicleId >= 0 && vehicleId < total, "vehículo " + vehicleId);
+            assertFalse(seen[vehicleId], "registro duplicado " + vehicleId);
+            seen[vehicleId] = true;
+            int thread = vehicleId / PER_THREAD;
+            int i = vehicleId % PER_THREAD;
+            assertEquals(thread, direction);
+            assertEquals(i, time);
+            assertEquals(TraceWriter.SPAWN + i % TraceWriter.EXIT, type);
+            assertEquals(checksum(time, vehicleId, direction), value, "registro roto " + vehicleId);
+        });
+        assertEquals(TraceWriter.CLOCK_WALL, clock);
+        assertEquals(total, read[0]);
+        for (int v = 0; v < total; v++)
+            assertTrue(seen[v], "registro perdido " + v);
+    }
+
+    @Test
+    void noAceptaRegistrosTrasCerrar() throws Exception {
+        TraceWriter writer = new TraceWriter(dir, TraceWriter.HEADER_SIZE + 4L * TraceWriter.RECORD_SIZE,
+                TraceWriter.CLOCK_SIMULATED);
+        for (int i = 0; i < 3; i++)
+            writer.record(i, TraceWriter.SPAWN, i, 0, 0);
+        writer.close();
+        for (int i = 0; i < 10; i++)
+            writer.record(i, TraceWriter.SPAWN, i, 0, 0);
+
+        assertEquals(3, headerCount(TraceWriter.segmentPath(dir, 0)));
+        assertFalse(Files.exists(TraceWriter.segmentPath(dir, 1)), "no se crean segmentos tras cerrar");
+        long[] read = { 0 };
+        assertEquals(TraceWriter.CLOCK_SIMULATED, TraceReader.scan(dir, (t, v, type, d, value) -> read[0]++));
+        assertEquals(3, read[0]);
+    }
+
+    private static long headerCount(Path segment) throws Exception {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(TraceWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ch.read(header, 0);
+            assertEquals(TraceWriter.MAGIC, header.getInt(0));
+            return header.getLong(16);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package trafico;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import trafico.TrafficSemaphoreSimulationV2.Direction;
+import trafico.TrafficSemaphoreSimulationV2.VehicleState;
+import trafico.TrafficSemaphoreSimulationV2.VehicleStore;
+
+/**
+ * Máquina de estados del vehículo: LLEGANDO -> ESPERANDO -> CRUZANDO ->
+ * SALIDO es el único camino válido y VehicleStore rechaza cualquier otro.
+ */
+class VehicleStateTest {
+
+    @Test
+    void soloSeAvanzaAlEstadoSiguiente() {
+        for (VehicleState from : VehicleState.values()) {
+            for (VehicleState to : VehicleState.values()) {
+                boolean legal = to.ordinal() == from.ordinal() + 1;
+                assertEquals(legal, from.canTransitionTo(to), from + " -> " + to);
+            }
+        }
+        assertTrue(VehicleState.LLEGANDO.canTransitionTo(VehicleState.ESPERANDO));
+        assertTrue(VehicleState.ESPERANDO.canTransitionTo(VehicleState.CRUZANDO));
+        assertTrue(VehicleState.CRUZANDO.canTransitionTo(VehicleState.SALIDO));
+        assertFalse(VehicleState.SALIDO.canTransitionTo(VehicleState.ESPERANDO));
+        assertFalse(VehicleState.LLEGANDO.canTransitionTo(VehicleState.CRUZANDO));
+    }
+
+    @Test
+    void elAlmacenRecorreElCicloCompleto() {
+        VehicleStore store = new VehicleStore(4);
+        List<String> seen = new ArrayList<>();
+        store.addTransitionListener((id, dir, from, to) -> seen.add(from + "->" + to));
+
+        int slot = store.allocate(1, Direction.NorteSur, 0, 0, 100, null);
+        assertEquals(VehicleState.LLEGANDO, store.state(slot));
+        store.transition(slot, VehicleState.ESPERANDO);
+        store.transition(slot, VehicleState.CRUZANDO);
+        store.transition(slot, VehicleState.SALIDO);
+        assertEquals(VehicleState.SALIDO, store.state(slot));
+        assertEquals(List.of("null->LLEGANDO", "LLEGANDO->ESPERANDO", "ESPERANDO->CRUZANDO", "CRUZANDO->SALIDO"),
+                seen);
+        assertNull(store.owner(slot), "sin dueño en el modo de eventos discretos");
+    }
+
+    @Test
+    void elAlmacenRechazaTransicionesInvalidas() {
+        VehicleStore store = new VehicleStore(4);
+        int slot = store.allocate(7, Direction.EsteOeste, 0, 0, 100, null);
+
+        assertThrows(IllegalStateException.class, () -> store.transition(slot, VehicleState.CRUZANDO));
+        assertThrows(IllegalStateException.class, () -> store.transition(slot, VehicleState.LLEGANDO));
+        assertEquals(VehicleState.LLEGANDO, store.state(slot), "una transición rechazada no cambia el estado");
+
+        store.transition(slot, VehicleState.ESPERANDO);
+        store.transition(slot, VehicleState.CRUZANDO);
+        store.transition(slot, VehicleState.SALIDO);
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> store.transition(slot, VehicleState.ESPERANDO));
+        assertTrue(e.getMessage().contains("SALIDO -> ESPERANDO"), e.getMessage());
+
+        store.release(slot);
+        assertThrows(IllegalStateException.class, () -> store.transition(slot, VehicleState.ESPERANDO),
+                "un slot libre no tiene estado");
+    }
+}